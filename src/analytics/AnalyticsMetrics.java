@@ -0,0 +1,136 @@
+package analytics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/*
+ * Keeps track of how long each phase of the analysis and each rule took, how many rows they handled and
+ * how much memory they allocated, so a slow run can be looked into without a profiler. The numbers can be
+ * read through getPhases(), are written as a sheet of the results, and each phase and rule is registered
+ * as an MBean (analytics:type=Phase,name=... and analytics:type=Rule,name=...) for JConsole and other JMX
+ * clients.
+ *
+ * Memory is counted with the JVM's per thread allocation counters, so only the thread that records a part
+ * of the work is counted for it. The rules are recorded on the threads that check the calls.
+ * */
+
+public class AnalyticsMetrics {
+	
+	public static final String PHASE = "Phase";
+	public static final String RULE = "Rule";
+	
+	//the JMX domain the MBeans are registered under
+	private static final String DOMAIN = "analytics";
+	
+	//null if the JVM can't count the memory allocated by a thread
+	private static final com.sun.management.ThreadMXBean ALLOCATIONS = getAllocationCounter();
+	
+	//every phase and rule measured so far, in the order they were first seen, keyed by kind and name
+	private Map<String, PhaseStats> phases;
+	
+	public AnalyticsMetrics() {
+		phases = new LinkedHashMap<String, PhaseStats>();
+	}
+	
+	/*
+	 * Gets the numbers of a phase or rule, registering them with JMX the first time
+	 * PARAMETER: String kind - PHASE or RULE
+	 * PARAMETER: String name - the name of the phase or rule
+	 * RETURN VALUE: PhaseStats - the numbers
+	 * */
+	public synchronized PhaseStats getPhase(String kind, String name) {
+		String key = kind + "\t" + name;
+		PhaseStats phase = phases.get(key);
+		if (phase == null) {
+			phase = new PhaseStats(kind, name);
+			phases.put(key, phase);
+			register(phase);
+		}
+		return phase;
+	}
+	
+	/*
+	 * Returns the numbers of every phase and rule measured so far, in the order they were first seen
+	 * */
+	public synchronized List<PhaseStats> getPhases() {
+		return new ArrayList<PhaseStats>(phases.values());
+	}
+	
+	/*
+	 * Records one run of a phase done on the current thread
+	 * PARAMETER: String name - the name of the phase
+	 * PARAMETER: long startNanos - System.nanoTime() when the phase started
+	 * PARAMETER: long startBytes - getAllocatedBytes() when the phase started
+	 * PARAMETER: long items - the rows the phase handled
+	 * */
+	public void record(String name, long startNanos, long startBytes, long items) {
+		long nanos = System.nanoTime() - startNanos;
+		PhaseStats phase = getPhase(PHASE, name);
+		phase.add(nanos, getAllocatedSince(startBytes), items);
+		phase.addRun(nanos);
+	}
+	
+	/*
+	 * Returns the memory the current thread has allocated so far
+	 * RETURN VALUE: long - the bytes allocated, -1 if the JVM can't count them
+	 * */
+	public static long getAllocatedBytes() {
+		if (ALLOCATIONS == null)
+			return -1;
+		return ALLOCATIONS.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+	
+	/*
+	 * Works out how much memory the current thread has allocated since getAllocatedBytes() was called
+	 * PARAMETER: long startBytes - what getAllocatedBytes() returned
+	 * RETURN VALUE: long - the bytes allocated since then, -1 if the JVM can't count them
+	 * */
+	public static long getAllocatedSince(long startBytes) {
+		long bytes = getAllocatedBytes();
+		if (bytes < 0 || startBytes < 0)
+			return -1;
+		return bytes - startBytes;
+	}
+	
+	/*
+	 * Registers the numbers of a phase or rule with the platform MBean server, replacing any left by an
+	 * earlier analysis. The analysis carries on without JMX if it can't be registered.
+	 * PARAMETER: PhaseStats phase - the numbers to register
+	 * */
+	private static void register(PhaseStats phase) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(DOMAIN + ":type=" + phase.getKind() + ",name=" + ObjectName.quote(phase.getName()));
+			if (server.isRegistered(name))
+				server.unregisterMBean(name);
+			server.registerMBean(phase, name);
+		}
+		catch (JMException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/*
+	 * Finds the JVM's counter of the memory allocated by each thread
+	 * RETURN VALUE: com.sun.management.ThreadMXBean - the counter, null if the JVM doesn't have one
+	 * */
+	private static com.sun.management.ThreadMXBean getAllocationCounter() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!(threads instanceof com.sun.management.ThreadMXBean))
+			return null;
+		
+		com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) threads;
+		if (!counter.isThreadAllocatedMemorySupported())
+			return null;
+		counter.setThreadAllocatedMemoryEnabled(true);
+		return counter;
+	}
+}
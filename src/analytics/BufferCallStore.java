@@ -0,0 +1,144 @@
+package analytics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/*
+ * Keeps the calls off the heap as fixed width records in a direct ByteBuffer or a memory-mapped file, so
+ * the size of the call list doesn't count against the heap. With a mapped file the operating system's
+ * page cache decides how much of it is in memory at once.
+ * Each record is 16 bytes: caller id, receiver id, start second, end second.
+ * */
+
+class BufferCallStore implements CallStore {
+	
+	private static final int RECORD_SIZE = 16;
+	private static final int CALLER = 0;
+	private static final int RECEIVER = 4;
+	private static final int START = 8;
+	private static final int END = 12;
+	
+	//the number of calls there is room for at first, the room is doubled when it fills up
+	private static final int FIRST_CAPACITY = 4096;
+	
+	//the most calls there can be room for, a buffer can't hold more than Integer.MAX_VALUE bytes
+	private static final int MAX_CAPACITY = Integer.MAX_VALUE / RECORD_SIZE;
+	
+	private ByteBuffer records;
+	private int size;
+	private int capacity;
+	
+	//the file the records are mapped from and where it is, null when they're in a direct buffer
+	private RandomAccessFile file;
+	private File path;
+	
+	/*
+	 * Constructor
+	 * PARAMETER: File file - the file to map the records from, it is deleted when the program exits,
+	 * 	null = keep the records in a direct buffer
+	 * */
+	public BufferCallStore(File file) throws IOException {
+		if (file != null) {
+			file.deleteOnExit();
+			this.file = new RandomAccessFile(file, "rw");
+			path = file;
+		}
+		size = 0;
+		capacity = 0;
+		grow(FIRST_CAPACITY);
+	}
+	
+	/*
+	 * Makes room for more records, keeping the ones already stored
+	 * PARAMETER: int newCapacity - the number of records to make room for, no more than MAX_CAPACITY
+	 * */
+	private void grow(int newCapacity) throws IOException {
+		ByteBuffer grown;
+		if (file != null) {
+			//mapping more of the file than it holds makes it longer, the records already in it stay where they are
+			grown = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, (long) newCapacity * RECORD_SIZE);
+		}
+		else {
+			grown = ByteBuffer.allocateDirect(newCapacity * RECORD_SIZE);//can't overflow, newCapacity is at most MAX_CAPACITY
+			if (records != null) {
+				ByteBuffer old = records.duplicate();
+				old.clear();
+				old.limit(size * RECORD_SIZE);
+				grown.put(old);
+			}
+		}
+		grown.order(ByteOrder.nativeOrder());
+		records = grown;
+		capacity = newCapacity;
+	}
+	
+	/*
+	 * THROWS: UncheckedIOException if the mapped file can't be made any bigger, or the store has as many calls as it can hold
+	 * */
+	public void add(int caller, int receiver, int start, int end) {
+		if (size == capacity) {
+			try {
+				if (capacity == MAX_CAPACITY)
+					throw new IOException("A month can't have more than " + MAX_CAPACITY + " calls");
+				grow((int) Math.min((long) capacity * 2, MAX_CAPACITY));
+			}
+			catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		
+		int record = size * RECORD_SIZE;
+		records.putInt(record + CALLER, caller);
+		records.putInt(record + RECEIVER, receiver);
+		records.putInt(record + START, start);
+		records.putInt(record + END, end);
+		size++;
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	public void clear() {
+		size = 0;
+	}
+	
+	public void close() {
+		records = null;
+		size = 0;
+		capacity = 0;
+		if (file == null)
+			return;
+		
+		//the mapping itself goes once it's garbage collected, closing the file lets go of the file handle
+		try {
+			file.close();
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+		}
+		file = null;
+		path.delete();
+	}
+	
+	public int getCaller(int call) {
+		return records.getInt(call * RECORD_SIZE + CALLER);
+	}
+	
+	public int getReceiver(int call) {
+		return records.getInt(call * RECORD_SIZE + RECEIVER);
+	}
+	
+	public int getStart(int call) {
+		return records.getInt(call * RECORD_SIZE + START);
+	}
+	
+	public int getEnd(int call) {
+		return records.getInt(call * RECORD_SIZE + END);
+	}
+}
@@ -1,284 +1,422 @@
 package analytics;
 
+import java.io.File;
 import java.io.IOException;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.Date;
 import java.util.GregorianCalendar;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
+import java.util.SortedMap;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
+import excel.CallHandler;
+import excel.DelimitedReader;
 import excel.ExcelReader;
 
+/*
+ * Holds the calls of any number of months, split up into one CallPartition per month. Call list files
+ * can be added one after another or several at once, each call goes into the partition of the month it
+ * was made in, so an archive of exports can be loaded once and any range of months analyzed from it. The calls can be kept
+ * on the heap, or off it in direct buffers or memory-mapped files for exports too big for the heap.
+ * */
+
 public class CallList {
 	
-	//this List will contain all the phone calls
-	//each phone call is represented by a Map with the various pieces of data
-	private List<String[]> calls;
+	//the partitions, keyed by the number of months since year 0 so a range of months is a range of keys
+	private TreeMap<Integer, CallPartition> partitions;
+	
+	//every distinct phone number is only stored once, in the directory, calls refer to it by its id
+	private PhoneDirectory phones;
+	
+	//midnight UTC of the last transfer's move day, in milliseconds
+	private long moveDay;
 	
-	//the year and month is supplied by the user to avoid running out of heap space
-	String year;
-	String month;
+	//the total number of calls in all the partitions
+	private int size;
 	
-	//these two dates will represent the start and end of the week before transfer
-	private String lastWeekStart;
-	private String lastWeekEnd;
+	//where the calls of each month are kept, one of HEAP, DIRECT or MAPPED
+	private int storage;
 	
-	//these numbers represent the indices that the particular data is stored in
-	public static int NUM_DATA_POINTS = 4;
-	public static int CALLER = 0;
-	public static int RECEIVER = 1;
-	public static int START = 2;
-	public static int END = 3;
-	private static int fiveMinutes = 300;
-	private static int nineMinutes = 530;
+	//progress is reported every time this many calls have been read
+	private static final int CHUNK_SIZE = 4096;
+	
+	//the ways the calls can be stored
+	public static final int HEAP = 0;//in arrays on the heap
+	public static final int DIRECT = 1;//in direct buffers, off the heap
+	public static final int MAPPED = 2;//in temporary files mapped into memory, paged in and out by the operating system
 	
 	/*
-	 * Constructor
-	 * PARAMETER: String filePath - the location of the call list Excel file to initialize from
+	 * Constructor, creates an empty call list that keeps its calls on the heap
+	 * PARAMETER: PhoneDirectory phones - the directory the phone numbers are looked up in
 	 * PARAMETER: String transfer - the date of the last transfer (yyyy/MM/dd)
+	 * THROWS: IllegalArgumentException if the transfer date can't be read
 	 * */
-	public CallList(String filePath, String year, String month, String transfer) throws IOException {
-		calls = ExcelReader.getCallList(filePath);
-		this.year = year;
-		this.month = month;
+	public CallList(PhoneDirectory phones, String transfer) {
+		this(phones, transfer, HEAP);
+	}
 	
-		//set up the start and end of the last week of the transfer
-		int transferYear = Integer.parseInt(transfer.substring(0,4));
-		int transferMonth = Integer.parseInt(transfer.substring(5,7));
-		int day = Integer.parseInt(transfer.substring(8,10));
+	/*
+	 * Constructor, creates an empty call list
+	 * PARAMETER: PhoneDirectory phones - the directory the phone numbers are looked up in
+	 * PARAMETER: String transfer - the date of the last transfer (yyyy/MM/dd)
+	 * PARAMETER: int storage - where the calls are kept, HEAP, DIRECT or MAPPED
+	 * THROWS: IllegalArgumentException if the transfer date or storage can't be read
+	 * */
+	public CallList(PhoneDirectory phones, String transfer, int storage) {
+		if (phones == null || transfer == null || transfer.length() != 10)
+			throw new IllegalArgumentException("The transfer date must be in yyyy/mm/dd format");
+		if (storage != HEAP && storage != DIRECT && storage != MAPPED)
+			throw new IllegalArgumentException("Unknown call storage: " + storage);
 		
-		Calendar calendar = new GregorianCalendar(transferYear, transferMonth - 1, day);//create a Calendar from move day
-		SimpleDateFormat format = new SimpleDateFormat("yyyy/MM/dd");
-		calendar.add(Calendar.DAY_OF_YEAR, -1);//go back one day to Sunday
-		lastWeekEnd = format.format(calendar.getTime());
-		calendar.add(Calendar.DAY_OF_YEAR, -6);//go back six days to Monday
-		lastWeekStart = format.format(calendar.getTime());
+		this.phones = phones;
+		this.storage = storage;
+		partitions = new TreeMap<Integer, CallPartition>();
+		size = 0;
+		
+		//set up move day, each partition works out the week before transfer from it
+		int transferYear;
+		int transferMonth;
+		int day;
+		try {
+			transferYear = Integer.parseInt(transfer.substring(0,4));
+			transferMonth = Integer.parseInt(transfer.substring(5,7));
+			day = Integer.parseInt(transfer.substring(8,10));
+		}
+		catch (NumberFormatException e) {
+			throw new IllegalArgumentException("The transfer date must be in yyyy/mm/dd format");
+		}
+		Calendar calendar = new GregorianCalendar(TimeZone.getTimeZone("UTC"));//create a Calendar from move day
+		calendar.clear();
+		calendar.set(transferYear, transferMonth - 1, day);
+		moveDay = calendar.getTimeInMillis();
 	}
 	
 	/*
-	 * Returns an Iterator that will iterate over all the calls
+	 * Constructor
+	 * PARAMETER: String filePath - the location of the call list Excel file to initialize from
+	 * PARAMETER: PhoneDirectory phones - the directory the phone numbers are looked up in
+	 * PARAMETER: String transfer - the date of the last transfer (yyyy/MM/dd)
+	 * THROWS: IllegalArgumentException if a call in the file has a date or time that can't be read
 	 * */
-	public Iterator<String[]> iterator() {
-		return new CallIterator<String[]>(calls);
+	public CallList(String filePath, PhoneDirectory phones, String transfer) throws IOException {
+		this(filePath, phones, transfer, null);
 	}
 	
 	/*
-	 * Returns an Iterator that will iterate over calls that are over five minutes long
+	 * Constructor
+	 * PARAMETER: String filePath - the location of the call list Excel file to initialize from
+	 * PARAMETER: PhoneDirectory phones - the directory the phone numbers are looked up in
+	 * PARAMETER: String transfer - the date of the last transfer (yyyy/MM/dd)
+	 * PARAMETER: ProgressListener progress - told how many calls have been read, can be null
+	 * THROWS: IllegalArgumentException if a call in the file has a date or time that can't be read
+	 * THROWS: CancellationException if the progress listener cancels the load
 	 * */
-	public Iterator<String[]> getOverFiveMinutes() throws ParseException {
-		List<String[]> overFive = new ArrayList<String[]>();
-		
-		//loop through the calls, adding all calls over 5 minutes to the new List
-		for(int i = 0; i < calls.size(); i++) {
-			String[] current = calls.get(i);
-			String start = year + "/" + month + "/" + current[START];
-			String end = year + "/" + month + "/" + current[END];
-			if (!withinFiveMinutes(start, end))
-				overFive.add(current);
+	public CallList(String filePath, PhoneDirectory phones, String transfer, ProgressListener progress) throws IOException {
+		this(phones, transfer);
+		load(filePath, progress);
+	}
+	
+	/*
+	 * Reads the calls out of a call list file and adds them to the partitions of the months they were made in.
+	 * The file can hold calls from any number of months. The calls are saved to a snapshot next to the file
+	 * which is read instead of the file the next time, as long as the file hasn't changed.
+	 * PARAMETER: String filePath - the location of the call list Excel file, or delimited text file (.csv, .tsv or .txt)
+	 * PARAMETER: ProgressListener progress - told how many calls have been read, can be null
+	 * THROWS: IllegalArgumentException if a call in the file has a date or time that can't be read
+	 * THROWS: CancellationException if the progress listener cancels the load
+	 * */
+	public void load(String filePath, ProgressListener progress) throws IOException {
+		try {
+			readFile(filePath, new Adder(progress, null, 0), false);
+		}
+		catch (UncheckedIOException e) {
+			//an off heap store couldn't be set up or grown
+			throw e.getCause();
 		}
-		
-		return new CallIterator<String[]>(overFive);
 	}
 	
 	/*
-	 * Returns an Iterator that will iterate over calls that are over nine minutes long
+	 * Reads the calls out of several call list files at once, one file per thread, and adds them to the partitions
+	 * of the months they were made in. The files are merged in the order they're given, and a call that an
+	 * earlier file already had is left out, so exports that overlap can be loaded together.
+	 * PARAMETER: List<String> filePaths - the locations of the call list files
+	 * PARAMETER: final ProgressListener progress - told how many calls have been read from all the files, can be null
+	 * THROWS: IllegalArgumentException if a call in a file has a date or time that can't be read
+	 * THROWS: CancellationException if the progress listener cancels the load
 	 * */
-	public Iterator<String[]> getOverNineMinutes() throws ParseException {
-		List<String[]> overNine = new ArrayList<String[]>();
-		
-		//loop through the calls, adding all calls over 9 minutes to the new List
-		for(int i = 0; i < calls.size(); i++) {
-			String[] current = calls.get(i);
-			String start = year + "/" + month + "/" + current[START];
-			String end = year + "/" + month + "/" + current[END];
-			if (!withinNineMinutes(start, end))
-				overNine.add(current);
+	public void load(List<String> filePaths, final ProgressListener progress) throws IOException {
+		if (filePaths.size() == 1) {
+			load(filePaths.get(0), progress);
+			return;
 		}
 		
-		return new CallIterator<String[]>(overNine);
+		//count the calls read by all the threads together, for the progress
+		final AtomicLong read = new AtomicLong();
+		final CallHandler counter = new CallHandler() {
+			public void handleCall(int caller, int receiver, int year, int month, int start, int end) {
+				long count = read.incrementAndGet();
+				if (progress != null && count % CHUNK_SIZE == 0) {
+					if (progress.isCancelled())
+						throw new CancellationException();
+					progress.progress(count);
+				}
+			}
+		};
+		
+		//parse the files at the same time, no more at once than there are cores
+		int threads = Math.min(filePaths.size(), Runtime.getRuntime().availableProcessors());
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<CallSnapshot.Recorder>> files = new ArrayList<Future<CallSnapshot.Recorder>>(filePaths.size());
+			for (int i = 0; i < filePaths.size(); i++) {
+				final String filePath = filePaths.get(i);
+				files.add(pool.submit(new Callable<CallSnapshot.Recorder>() {
+					public CallSnapshot.Recorder call() throws IOException {
+						return readFile(filePath, counter, true);
+					}
+				}));
+			}
+			
+			//merge each file in as soon as it's done, in order, while the later files are still being parsed
+			DuplicateFilter duplicates = new DuplicateFilter();
+			for (int i = 0; i < files.size(); i++)
+				getResult(files.get(i)).replay(new Adder(null, duplicates, i));
+		}
+		catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		finally {
+			pool.shutdownNow();
+		}
 	}
 	
 	/*
-	 * Determines if the phone call is less than 5 minutes
-	 * PARAMETER: String start = represents the call's start time (yyyy/MM/dd kk:mm:ss)
-	 * PARAMETER: String end = represents the call's end time (yyyy/MM/dd kk:mm:ss)
-	 * RETURN VALUE: boolean = true - less than 5 minutes, false - longer than 5 minutes
+	 * Creates a handler that adds the calls it's handed to the partitions of the months they were made in,
+	 * for calls that are read somewhere else, a batch at a time
+	 * PARAMETER: DuplicateFilter duplicates - leaves out calls an earlier file had, null = keep every call
+	 * PARAMETER: int file - the index of the file the calls are from, for the duplicate filter
+	 * RETURN VALUE: CallHandler - the handler
 	 * */
-	private boolean withinFiveMinutes(String start, String end) throws ParseException {
-		SimpleDateFormat format = new SimpleDateFormat("yyyy/MM/dd kk:mm:ss");
-		long seconds = getDifferenceInSeconds(format.parse(start), format.parse(end));
-		return (seconds <= fiveMinutes);
+	CallHandler createAdder(DuplicateFilter duplicates, int file) {
+		return new Adder(null, duplicates, file);
 	}
 	
 	/*
-	 * Determines if the phone call is less than 9 minutes
-	 * PARAMETER: String start = represents the call's start time (yyyy/MM/dd kk:mm:ss)
-	 * PARAMETER: String end = represents the call's end time (yyyy/MM/dd kk:mm:ss)
-	 * RETURN VALUE: boolean = true - less than 9 minutes, false - longer than 9 minutes
+	 * Takes every call out of every month, the partitions and the phone ids are kept so the next batch of
+	 * calls goes into the same ones
 	 * */
-	private boolean withinNineMinutes(String start, String end) throws ParseException {
-		SimpleDateFormat format = new SimpleDateFormat("yyyy/MM/dd kk:mm:ss");
-		long seconds = getDifferenceInSeconds(format.parse(start), format.parse(end));
-		return (seconds <= nineMinutes);
+	void clear() {
+		List<CallPartition> all = getPartitions();
+		for (int i = 0; i < all.size(); i++)
+			all.get(i).clear();
+		size = 0;
 	}
 	
 	/*
-	 * Determines if a given phone number is a cell phone, assuming cell phone numbers are 09 numbers
-	 * PARAMETER: String phone = the phone number to test
-	 * RETURN VALUE: boolean = true - is a cell phone, false - is a home phone
+	 * Lets go of where every month's calls are kept, such as the files of an off heap list. The list can't be
+	 * used after it's closed. PhoneAnalytics closes a list when another one replaces it.
 	 * */
-	public boolean isCellPhone(String phone) {
-		return phone.startsWith("09");
+	void close() {
+		List<CallPartition> all = getPartitions();
+		for (int i = 0; i < all.size(); i++)
+			all.get(i).close();
+		size = 0;
 	}
 	
 	/*
-	 * Determines whether or not a date is a certain day of the week (yyyy/MM/dd). This is for determining if calls were made 
-	 * 	the wrong times
-	 * PARAMETER: String date - the date to test
-	 * PARAMETER: int dayOfWeek - the day to test against, should be a constant from the Calendar class
-	 * RETURN VALUE: boolean = true - is that day, false - not that day
+	 * Waits for a file to be parsed
+	 * PARAMETER: Future<CallSnapshot.Recorder> file - the task parsing the file
+	 * RETURN VALUE: CallSnapshot.Recorder - the calls in the file
+	 * THROWS: the exception the task threw, if it failed
 	 * */
-	public static boolean isDayOfWeek(String date, int dayOfWeek) {
-		int year = Integer.parseInt(date.substring(0,4));
-		int month = Integer.parseInt(date.substring(5,7));
-		int day = Integer.parseInt(date.substring(8,10));
-		
-		Calendar calendar = new GregorianCalendar(year, month - 1, day);
-		return (calendar.get(Calendar.DAY_OF_WEEK) == dayOfWeek);
+	private static CallSnapshot.Recorder getResult(Future<CallSnapshot.Recorder> file) throws IOException {
+		try {
+			return file.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CancellationException();
+		}
+		catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IOException(cause);
+		}
 	}
 	
 	/*
-	 * Returns the absolute value of the difference between two Dates in seconds
-	 * PARAMETER: Date date1 = the first date to use (yyyy/MM/dd kk:mm:ss)
-	 * PARAMETER: Date date2 = the second date to use (yyyy/MM/dd kk:mm:ss)
-	 * RETURN VALUE: long = the time difference between the two dates in seconds
+	 * Reads the calls out of a call list file, from its snapshot if it has an up to date one. Otherwise the
+	 * file is streamed in, so the whole file is never held in memory, and a snapshot is saved for next time.
+	 * PARAMETER: String filePath - the location of the call list file
+	 * PARAMETER: CallHandler handler - receives each call as it is read
+	 * PARAMETER: boolean keepCalls - true = keep a copy of the calls to hand back
+	 * RETURN VALUE: CallSnapshot.Recorder - the copy of the calls, null if keepCalls is false
 	 * */
-	private static long getDifferenceInSeconds(Date date1, Date date2) {
-		long milis1 = date1.getTime();
-		long milis2 = date2.getTime();
+	private CallSnapshot.Recorder readFile(String filePath, CallHandler handler, boolean keepCalls) throws IOException {
+		CallSnapshot.Recorder recorder = null;
+		if (keepCalls) {
+			recorder = new CallSnapshot.Recorder(phones, handler);
+			handler = recorder;
+		}
 		
-		long diff = Math.abs(milis2 - milis1);
+		//a snapshot from an earlier run of the same file is much quicker to read than the workbook
+		if (CallSnapshot.read(filePath, phones, handler))
+			return recorder;
 		
-		return (diff / 1000);
+		if (recorder == null)
+			recorder = new CallSnapshot.Recorder(phones, handler);
+		if (DelimitedReader.isDelimited(filePath))
+			DelimitedReader.readCallList(filePath, phones, recorder);
+		else
+			ExcelReader.readCallList(filePath, phones, recorder);
+		recorder.write(filePath);
+		return keepCalls ? recorder : null;
 	}
 	
 	/*
-	 * Gets the total minutes of each phone number
-	 * RETURN VALUE: Map of Maps containing phone number and total number of used minutes
+	 * Gets the partition for a month, creating an empty one if there isn't one yet
+	 * PARAMETER: int key - the partition's key, from getKey()
+	 * PARAMETER: int year - the year of the partition
+	 * PARAMETER: int month - the month of the partition (1 - 12)
+	 * RETURN VALUE: CallPartition - the partition
 	 * */
-	public Map<String, Map<String, String>> getTotalMinutes() throws ParseException {
-		Map<String, Map<String, String>> phones = new HashMap<String, Map<String, String>>();
-		
-		//iterate through the calls in the call list, adding up the time
-		Iterator<String[]> callList = this.iterator();
-		while (callList.hasNext()) {
-			String[] call = callList.next();
-			
-			//if the phone number is already in the Map, just add on the seconds
-			if (phones.containsKey(call[CallList.CALLER])) {
-				Map<String, String> phone = phones.get(call[CallList.CALLER]);
-				double totalSeconds = Double.parseDouble(phone.get("count"));
-				
-				//parse the dates and get the difference in seconds
-				SimpleDateFormat format = new SimpleDateFormat("yyyy/MM/dd kk:mm:ss");
-				totalSeconds += getDifferenceInSeconds(format.parse(year + "/" + month + "/" + call[CallList.START]), format.parse(year + "/" + month + "/" + call[CallList.END]));
-				
-				//put the time back into the Map
-				phone.put("count", totalSeconds + "");
-			}
-			//if the phone number isn't already in the Map, create a Map to represent the phone number
-			else {
-				Map<String, String> phone = new HashMap<String, String>();
-				phone.put("phone", call[CallList.CALLER]);
-				
-				//parse the dates and get the difference in seconds
-				SimpleDateFormat format = new SimpleDateFormat("yyyy/MM/dd kk:mm:ss");
-				double totalSeconds = getDifferenceInSeconds(format.parse(year + "/" + month + "/" + call[CallList.START]), format.parse(year + "/" + month + "/" + call[CallList.END]));
-				
-				phone.put("count", "" + totalSeconds);
-				phones.put(call[CallList.CALLER], phone);
-			}
+	private CallPartition getOrCreatePartition(int key, int year, int month) {
+		CallPartition partition = partitions.get(key);
+		if (partition == null) {
+			partition = new CallPartition(phones, year, month, moveDay, createStore(year, month));
+			partitions.put(key, partition);
 		}
+		return partition;
+	}
+	
+	/*
+	 * Creates somewhere to keep the calls of a month
+	 * PARAMETER: int year - the year of the month
+	 * PARAMETER: int month - the month (1 - 12)
+	 * RETURN VALUE: CallStore - the empty store
+	 * THROWS: UncheckedIOException if the store's file can't be created
+	 * */
+	private CallStore createStore(int year, int month) {
+		if (storage == HEAP)
+			return new HeapCallStore();
 		
-		//Iterate over all the phones and change the time value into minutes
-		Iterator<String> phoneKeys = phones.keySet().iterator();
-		while (phoneKeys.hasNext()) {
-			Map<String, String> phone = phones.get(phoneKeys.next());
-			double time = Double.parseDouble(phone.get("count"));
-			time = time / 60; //convert to minutes
-			phone.put("count", "" + Math.round(time));
+		try {
+			if (storage == DIRECT)
+				return new BufferCallStore(null);
+			return new BufferCallStore(File.createTempFile("calls-" + year + "-" + month + "-", ".store"));
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
 		}
-		
-		return phones;
 	}
 	
 	/*
-	 * Gets the month
-	 * RETURN VALUE: String - the month entered by the user
+	 * Works out the key a month's partition is stored under
+	 * PARAMETER: int year - the year
+	 * PARAMETER: int month - the month (1 - 12)
+	 * RETURN VALUE: int - the number of months since the start of year 0
 	 * */
-	public String getMonth() {
-		return month;
+	private static int getKey(int year, int month) {
+		return year * 12 + month - 1;
 	}
 	
 	/*
-	 * Checks to see if a call was made during planning session
-	 * PARAMETER: String start - the start time of the call (MM/dd kk:mm:ss)
-	 * PARAMETER: String end - the end time of the call 
-	 * RETURN VALUE: boolean - true = during planning session, false = not during planning
+	 * Returns the number of calls in all the months
 	 * */
-	public boolean duringPlanningSession(String start, String end) {
-		//add the year onto the dates 
-		start = year + "/" + month + "/" + start;
-		end = year + "/" + month + "/" + end;
-		
-		//check if it was on a planning day
-		boolean planningDay = false;
-		if (start.compareTo(lastWeekStart) > 0 && end.compareTo(lastWeekEnd) < 0 && isDayOfWeek(start, Calendar.THURSDAY))
-			planningDay = true;
-		else if (isDayOfWeek(start, Calendar.FRIDAY))
-			planningDay = true;
+	public int size() {
+		return size;
+	}
 	
-		//truncate the start and end time to be just hour and minute
-		start = start.substring(11,16);
-		end = end.substring(11, 16);
-		
-		//now check the start and end times
-		if (planningDay && end.compareTo("13:30") < 0)
-			return true;
-		else
-			return false;
+	/*
+	 * Returns the calls of one month
+	 * PARAMETER: int year - the year
+	 * PARAMETER: int month - the month (1 - 12)
+	 * RETURN VALUE: CallPartition - the calls of that month, null if there weren't any
+	 * */
+	public CallPartition getPartition(int year, int month) {
+		return partitions.get(getKey(year, month));
 	}
 	
+	/*
+	 * Returns the calls of every month, oldest month first
+	 * RETURN VALUE: List<CallPartition> - a partition for every month there are calls for
+	 * */
+	public List<CallPartition> getPartitions() {
+		return new ArrayList<CallPartition>(partitions.values());
+	}
 	
-	/*This nested class will provide an iterator for the CallList*/
-	private class CallIterator<T> implements Iterator<T> {
-		private List<String[]> calls;
-		private int i;//keep track of current index
+	/*
+	 * Returns the calls of a range of months, oldest month first. Months without any calls are left out.
+	 * PARAMETER: int fromYear - the year of the first month
+	 * PARAMETER: int fromMonth - the first month (1 - 12)
+	 * PARAMETER: int toYear - the year of the last month
+	 * PARAMETER: int toMonth - the last month (1 - 12), the range includes it
+	 * RETURN VALUE: List<CallPartition> - the partitions of the months in the range
+	 * THROWS: IllegalArgumentException if the range ends before it starts
+	 * */
+	public List<CallPartition> getPartitions(int fromYear, int fromMonth, int toYear, int toMonth) {
+		int from = getKey(fromYear, fromMonth);
+		int to = getKey(toYear, toMonth);
+		if (to < from)
+			throw new IllegalArgumentException("The last month to analyze is before the first month");
 		
-		public CallIterator(List<String[]> calls) {
-			this.calls = calls;
-			i = 0;
-		}
-
-		public boolean hasNext() {
-			if (i < calls.size())
-				return true;
-			return false;
-		}
-
-		@SuppressWarnings("unchecked")
-		public T next() {
-			return (T) calls.get(i++);
+		SortedMap<Integer, CallPartition> range = partitions.subMap(from, to + 1);
+		return new ArrayList<CallPartition>(range.values());
+	}
+	
+	/*This nested class adds the calls it's handed to the partitions of the months they were made in*/
+	private class Adder implements CallHandler {
+		private ProgressListener progress;//told how many calls have been added, can be null
+		private DuplicateFilter duplicates;//leaves out calls an earlier file had, null = keep every call
+		private int file;//the index of the file the calls are from, for the duplicate filter
+		private int added;
+		
+		//the calls in a file are mostly in date order, so remember the last partition instead of looking it up every time
+		private int lastKey;
+		private CallPartition last;
+		
+		public Adder(ProgressListener progress, DuplicateFilter duplicates, int file) {
+			this.progress = progress;
+			this.duplicates = duplicates;
+			this.file = file;
+			added = 0;
+			lastKey = -1;
+			last = null;
 		}
 		
-		/*Removing a call is an unsupported method*/
-		public void remove() {
-			throw new UnsupportedOperationException();
+		public void handleCall(int caller, int receiver, int year, int month, int start, int end) {
+			int key = getKey(year, month);
+			if (duplicates != null && duplicates.isDuplicate(key, caller, receiver, start, end, file))
+				return;
+			
+			if (key != lastKey) {
+				last = getOrCreatePartition(key, year, month);
+				lastKey = key;
+			}
+			last.add(caller, receiver, start, end);
+			size++;
+			added++;
+			
+			//every chunk, say how far along the load is and check whether it has been cancelled
+			if (progress != null && added % CHUNK_SIZE == 0) {
+				if (progress.isCancelled())
+					throw new CancellationException();
+				progress.progress(added);
+			}
 		}
 	}
 }
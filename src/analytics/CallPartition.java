@@ -0,0 +1,356 @@
+package analytics;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Iterator;
+import java.util.TimeZone;
+
+/*
+ * Holds the calls made in one month. The CallList keeps one partition for every month it has calls for,
+ * so checking the calls of a month only ever touches that month's partition.
+ * */
+
+public class CallPartition {
+	
+	//caller and receiver are ids from the phone directory, start and end are in seconds since the start of the month
+	private CallStore store;
+	
+	//the day of the week the month starts on (Calendar.SUNDAY = 0), the day of the week of every call is worked out from it
+	private int firstDayOfWeek;
+	
+	//the calls sorted by the time of the week they started, null until it's first needed
+	private CallTimeIndex timeIndex;
+	
+	//every distinct phone number is only stored once, in the directory, calls refer to it by its id
+	private PhoneDirectory phones;
+	
+	//the month the calls were made in
+	private int year;
+	private int month;
+	private String monthText;//the month as two digits, for display
+	
+	//these two times will represent the start and end of the week before transfer (seconds since the start of the month)
+	private int lastWeekStart;
+	private int lastWeekEnd;
+	
+	//these numbers represent the indices that the particular data is stored in
+	public static int NUM_DATA_POINTS = 4;
+	public static int CALLER = 0;
+	public static int RECEIVER = 1;
+	public static int START = 2;
+	public static int END = 3;
+	
+	public static final int SECONDS_PER_DAY = 86400;
+	
+	/*
+	 * Constructor
+	 * PARAMETER: PhoneDirectory phones - the directory the phone numbers are looked up in
+	 * PARAMETER: int year - the year the calls were made in
+	 * PARAMETER: int month - the month the calls were made in (1 - 12)
+	 * PARAMETER: long moveDay - midnight UTC of the last transfer's move day, in milliseconds
+	 * PARAMETER: CallStore store - where the calls are kept
+	 * */
+	CallPartition(PhoneDirectory phones, int year, int month, long moveDay, CallStore store) {
+		this.phones = phones;
+		this.year = year;
+		this.month = month;
+		monthText = String.format("%02d", month);
+		
+		this.store = store;
+		
+		//work out how far move day is from the start of this month, it can be before or after it
+		Calendar monthStart = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+		monthStart.clear();
+		monthStart.set(year, month - 1, 1);
+		int moveSeconds = (int) ((moveDay - monthStart.getTimeInMillis()) / 1000);
+		firstDayOfWeek = monthStart.get(Calendar.DAY_OF_WEEK) - Calendar.SUNDAY;
+		
+		lastWeekEnd = moveSeconds - SECONDS_PER_DAY;//go back one day to Sunday
+		lastWeekStart = lastWeekEnd - 6 * SECONDS_PER_DAY;//go back six days to Monday
+	}
+	
+	/*
+	 * Adds a call onto the end of the partition
+	 * PARAMETER: int caller - the id of the phone number that made the call
+	 * PARAMETER: int receiver - the id of the phone number that was called
+	 * PARAMETER: int start - the start of the call in seconds since the start of the month
+	 * PARAMETER: int end - the end of the call in seconds since the start of the month
+	 * */
+	void add(int caller, int receiver, int start, int end) {
+		store.add(caller, receiver, start, end);
+	}
+	
+	/*
+	 * Takes every call out of the partition, so the next batch of calls can be checked in the same space
+	 * */
+	synchronized void clear() {
+		store.clear();
+		timeIndex = null;
+	}
+	
+	/*
+	 * Lets go of where the calls are kept, the partition can't be used after it's closed
+	 * */
+	synchronized void close() {
+		store.close();
+		timeIndex = null;
+	}
+	
+	/*
+	 * Returns an Iterator that will iterate over all the calls
+	 * */
+	public Iterator<String[]> iterator() {
+		return new CallIterator<String[]>();
+	}
+	
+	/*
+	 * Returns the number of calls in the partition
+	 * */
+	public int size() {
+		return store.size();
+	}
+	
+	/*
+	 * Returns the phone number that made a call
+	 * PARAMETER: int call - the index of the call
+	 * */
+	public String getCaller(int call) {
+		return phones.getPhone(store.getCaller(call));
+	}
+	
+	/*
+	 * Returns the id of the phone number that made a call
+	 * PARAMETER: int call - the index of the call
+	 * */
+	public int getCallerId(int call) {
+		return store.getCaller(call);
+	}
+	
+	/*
+	 * Returns the id of the phone number that received a call
+	 * PARAMETER: int call - the index of the call
+	 * */
+	public int getReceiverId(int call) {
+		return store.getReceiver(call);
+	}
+	
+	/*
+	 * Returns the phone number with the given id
+	 * PARAMETER: int id - the id of the phone number
+	 * */
+	public String getPhone(int id) {
+		return phones.getPhone(id);
+	}
+	
+	/*
+	 * Returns the id of a phone number that is already in the directory
+	 * PARAMETER: String phone - the phone number
+	 * RETURN VALUE: int - the id, or -1 if the directory doesn't have the number
+	 * */
+	public int findPhoneId(String phone) {
+		return phones.findId(phone);
+	}
+	
+	/*
+	 * Returns the start of the week before transfer, in seconds since the start of the month. It changes
+	 * when the transfer date does.
+	 * */
+	public int getLastWeekStart() {
+		return lastWeekStart;
+	}
+	
+	/*
+	 * Returns the number of distinct phone numbers in the directory, phone ids go from 0 up to this number
+	 * */
+	public int getPhoneCount() {
+		return phones.size();
+	}
+	
+	/*
+	 * Returns the phone number that received a call
+	 * PARAMETER: int call - the index of the call
+	 * */
+	public String getReceiver(int call) {
+		return phones.getPhone(store.getReceiver(call));
+	}
+	
+	/*
+	 * Returns the day of the week a call was made on
+	 * PARAMETER: int call - the index of the call
+	 * RETURN VALUE: int - the day of the week, as a Calendar constant
+	 * */
+	public int getDayOfWeek(int call) {
+		return getDayOfWeekAt(store.getStart(call));
+	}
+	
+	/*
+	 * Returns the calls indexed by the time of the week they started, built the first time it's asked for
+	 * RETURN VALUE: CallTimeIndex - the index
+	 * */
+	public synchronized CallTimeIndex getTimeIndex() {
+		if (timeIndex == null || timeIndex.size() != store.size())
+			timeIndex = new CallTimeIndex(this);
+		return timeIndex;
+	}
+	
+	/*
+	 * Returns the day of the month a call was made on
+	 * PARAMETER: int call - the index of the call
+	 * */
+	public int getDay(int call) {
+		return store.getStart(call) / SECONDS_PER_DAY + 1;
+	}
+	
+	/*
+	 * Returns the time of day a call started, in minutes since midnight
+	 * PARAMETER: int call - the index of the call
+	 * */
+	public int getStartMinute(int call) {
+		return (store.getStart(call) % SECONDS_PER_DAY) / 60;
+	}
+	
+	/*
+	 * Returns the time of day a call ended, in minutes since midnight
+	 * PARAMETER: int call - the index of the call
+	 * */
+	public int getEndMinute(int call) {
+		return (store.getEnd(call) % SECONDS_PER_DAY) / 60;
+	}
+	
+	/*
+	 * Returns the length of a call in seconds
+	 * PARAMETER: int call - the index of the call
+	 * RETURN VALUE: int - the number of seconds between the call's start and end
+	 * */
+	public int getDuration(int call) {
+		return Math.abs(store.getEnd(call) - store.getStart(call));
+	}
+	
+	/*
+	 * Determines if a given phone number is a cell phone, assuming cell phone numbers are 09 numbers
+	 * PARAMETER: String phone = the phone number to test
+	 * RETURN VALUE: boolean = true - is a cell phone, false - is a home phone
+	 * */
+	public boolean isCellPhone(String phone) {
+		return phone.startsWith("09");
+	}
+	
+	/*
+	 * Gets the total minutes of each phone number
+	 * RETURN VALUE: ViolationCounter - the total number of used minutes, keyed by the id of the phone number that made the calls
+	 * */
+	public ViolationCounter getTotalMinutes() {
+		//add up the seconds for each caller, the counters only grow as far as the callers' ids
+		ViolationCounter totals = new ViolationCounter(0);
+		for (int i = 0; i < store.size(); i++)
+			totals.add(store.getCaller(i), getDuration(i));
+		
+		//change the time value into minutes
+		ViolationCounter minutes = new ViolationCounter(totals.size());
+		for (int id = 0; id < totals.size(); id++)
+			minutes.add(id, Math.round(totals.get(id) / 60.0));
+		
+		return minutes;
+	}
+	
+	/*
+	 * Gets the month
+	 * RETURN VALUE: String - the month the calls were made in, as two digits
+	 * */
+	public String getMonth() {
+		return monthText;
+	}
+	
+	/*
+	 * Gets the year
+	 * RETURN VALUE: int - the year the calls were made in
+	 * */
+	public int getYear() {
+		return year;
+	}
+	
+	/*
+	 * Gets the month as a number
+	 * RETURN VALUE: int - the month the calls were made in (1 - 12)
+	 * */
+	public int getMonthNumber() {
+		return month;
+	}
+	
+	/*
+	 * Checks to see if a call was made during planning session
+	 * PARAMETER: int call - the index of the call
+	 * PARAMETER: int planningDay - the day of weekly planning session, as a Calendar constant
+	 * PARAMETER: int transferPlanningDay - the day of planning session in the week before transfers, as a Calendar constant
+	 * PARAMETER: int planningEnd - calls that end before this are part of planning session (minutes since midnight)
+	 * RETURN VALUE: boolean - true = during planning session, false = not during planning
+	 * */
+	public boolean duringPlanningSession(int call, int planningDay, int transferPlanningDay, int planningEnd) {
+		//check if it was on a planning day
+		int start = store.getStart(call);
+		int dayOfWeek = getDayOfWeekAt(start);
+		boolean onPlanningDay = false;
+		if (start >= lastWeekStart && store.getEnd(call) < lastWeekEnd && dayOfWeek == transferPlanningDay)
+			onPlanningDay = true;
+		else if (dayOfWeek == planningDay)
+			onPlanningDay = true;
+		
+		//now check the end time
+		if (onPlanningDay && getEndMinute(call) < planningEnd)
+			return true;
+		else
+			return false;
+	}
+	
+	/*
+	 * Works out the day of the week of a time in the month
+	 * PARAMETER: int seconds - the time in seconds since the start of the month
+	 * RETURN VALUE: int - the day of the week, as a Calendar constant
+	 * */
+	private int getDayOfWeekAt(int seconds) {
+		return (firstDayOfWeek + seconds / SECONDS_PER_DAY) % 7 + Calendar.SUNDAY;
+	}
+	
+	/*
+	 * Formats a time for display (MM/dd HH:mm:ss)
+	 * PARAMETER: int seconds - the time in seconds since the start of the month
+	 * RETURN VALUE: String - the formatted time
+	 * */
+	private String formatTime(int seconds) {
+		int day = seconds / SECONDS_PER_DAY + 1;
+		int time = seconds % SECONDS_PER_DAY;
+		return String.format("%s/%02d %02d:%02d:%02d", monthText, day, time / 3600, time / 60 % 60, time % 60);
+	}
+	
+	
+	/*This nested class will provide an iterator for the partition, building each call's Strings from the columns*/
+	private class CallIterator<T> implements Iterator<T> {
+		private int i;//keep track of current index
+		
+		public CallIterator() {
+			i = 0;
+		}
+		
+		public boolean hasNext() {
+			if (i < store.size())
+				return true;
+			return false;
+		}
+		
+		@SuppressWarnings("unchecked")
+		public T next() {
+			String[] call = new String[NUM_DATA_POINTS];
+			call[CALLER] = phones.getPhone(store.getCaller(i));
+			call[RECEIVER] = phones.getPhone(store.getReceiver(i));
+			call[START] = formatTime(store.getStart(i));
+			call[END] = formatTime(store.getEnd(i));
+			i++;
+			return (T) call;
+		}
+		
+		/*Removing a call is an unsupported method*/
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
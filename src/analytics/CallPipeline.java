@@ -0,0 +1,245 @@
+package analytics;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+
+import excel.CallHandler;
+import excel.DelimitedReader;
+import excel.ExcelReader;
+
+/*
+ * Reads call list files on a thread of its own and hands the calls over in batches, so the calls can be
+ * checked while the rest of the file is still being decoded. There are only a set number of batches, which
+ * go round and round between the reader and whoever takes them, so the reader waits once they're all full
+ * and no more calls than fit in them are ever held in memory at once.
+ *
+ * The files are read one after another, in the order they're given, and a batch only ever holds calls from
+ * one file. A file's snapshot is used if it has an up to date one, but no snapshot is written, since that
+ * would mean keeping every call of the file.
+ * */
+
+class CallPipeline {
+	
+	//the number of calls in a batch
+	public static final int BATCH_SIZE = 16384;
+	
+	//taken from the queue of full batches when all the files have been read
+	private static final Batch END = new Batch(0);
+	
+	private List<String> filePaths;
+	private PhoneDirectory phones;
+	private AnalyticsMetrics metrics;//told how long the reading took, can be null
+	
+	private BlockingQueue<Batch> free;//empty batches waiting for the reader
+	private BlockingQueue<Batch> full;//batches the reader has filled, in the order they were read
+	private Thread reader;
+	private volatile Throwable error;//what stopped the reader, null if it didn't fail
+	
+	/*
+	 * Constructor, the files aren't read until start() is called
+	 * PARAMETER: List<String> filePaths - the locations of the call list files
+	 * PARAMETER: PhoneDirectory phones - gives the ids of the caller and receiver of each call
+	 * PARAMETER: int batches - the number of batches that can be waiting to be taken at once
+	 * PARAMETER: AnalyticsMetrics metrics - told how long the reading took, can be null
+	 * THROWS: IllegalArgumentException if there isn't at least one batch
+	 * */
+	public CallPipeline(List<String> filePaths, PhoneDirectory phones, int batches, AnalyticsMetrics metrics) {
+		if (batches < 1)
+			throw new IllegalArgumentException("The pipeline needs at least 1 batch: " + batches);
+		this.filePaths = filePaths;
+		this.phones = phones;
+		this.metrics = metrics;
+		
+		//there's room in the full queue for every batch and the end, so the reader never waits on it
+		free = new ArrayBlockingQueue<Batch>(batches);
+		full = new ArrayBlockingQueue<Batch>(batches + 1);
+		for (int i = 0; i < batches; i++)
+			free.add(new Batch(BATCH_SIZE));
+	}
+	
+	/*
+	 * Starts reading the files
+	 * */
+	public void start() {
+		reader = new Thread(new Runnable() {
+			public void run() {
+				read();
+			}
+		}, "Call list reader");
+		reader.setDaemon(true);
+		reader.start();
+	}
+	
+	/*
+	 * Waits for the next batch of calls. It must be handed back with recycle() once its calls have been used.
+	 * RETURN VALUE: Batch - the batch, null if all the files have been read
+	 * THROWS: IOException if a file couldn't be read
+	 * THROWS: IllegalArgumentException if a call in a file has a date or time that can't be read
+	 * THROWS: CancellationException if the thread is interrupted while it waits
+	 * */
+	public Batch take() throws IOException {
+		Batch batch;
+		try {
+			batch = full.take();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CancellationException();
+		}
+		if (batch != END)
+			return batch;
+		
+		//put the end back, so asking again gives the same answer
+		full.add(END);
+		Throwable cause = error;
+		if (cause == null)
+			return null;
+		if (cause instanceof IOException)
+			throw (IOException) cause;
+		if (cause instanceof RuntimeException)
+			throw (RuntimeException) cause;
+		if (cause instanceof Error)
+			throw (Error) cause;
+		throw new IOException(cause);
+	}
+	
+	/*
+	 * Hands a batch back to the reader to be filled again
+	 * PARAMETER: Batch batch - a batch from take()
+	 * */
+	public void recycle(Batch batch) {
+		batch.size = 0;
+		free.add(batch);
+	}
+	
+	/*
+	 * Stops the reader, if it's still going
+	 * */
+	public void close() {
+		if (reader != null)
+			reader.interrupt();
+	}
+	
+	/*
+	 * Reads all the files into batches, run on the reader thread. However it stops, the end is put in the
+	 * queue of full batches last.
+	 * */
+	private void read() {
+		long startNanos = System.nanoTime();
+		long startBytes = AnalyticsMetrics.getAllocatedBytes();
+		Filler filler = new Filler();
+		try {
+			for (int i = 0; i < filePaths.size(); i++) {
+				String filePath = filePaths.get(i);
+				filler.file = i;
+				if (!CallSnapshot.read(filePath, phones, filler)) {
+					if (DelimitedReader.isDelimited(filePath))
+						DelimitedReader.readCallList(filePath, phones, filler);
+					else
+						ExcelReader.readCallList(filePath, phones, filler);
+				}
+				filler.flush();
+			}
+			if (metrics != null)
+				metrics.record("Read call list", startNanos, startBytes, filler.read);
+		}
+		catch (CancellationException e) {
+			//the pipeline was closed, nobody is waiting for the batches any more
+		}
+		catch (Throwable e) {
+			error = e;
+		}
+		finally {
+			full.add(END);
+		}
+	}
+	
+	/*This nested class fills batches with the calls read from a file and hands them over as they fill up*/
+	private class Filler implements CallHandler {
+		private int file;//the index of the file being read
+		private Batch batch;//the batch being filled, null until the first call
+		private long read;//the number of calls read from all the files
+		
+		public void handleCall(int caller, int receiver, int year, int month, int start, int end) {
+			if (batch == null) {
+				try {
+					batch = free.take();
+				}
+				catch (InterruptedException e) {
+					throw new CancellationException();
+				}
+				batch.file = file;
+			}
+			
+			batch.add(caller, receiver, year * 12 + month - 1, start, end);
+			read++;
+			if (batch.size == batch.callers.length)
+				flush();
+		}
+		
+		/*
+		 * Hands over the batch being filled, if it has any calls in it
+		 * */
+		public void flush() {
+			if (batch == null)
+				return;
+			full.add(batch);
+			batch = null;
+		}
+	}
+	
+	/*This nested class holds a batch of calls from one file, column by column*/
+	public static class Batch {
+		private int file;//the index of the file the calls are from
+		private int size;
+		private int[] months;//the number of months since year 0
+		private int[] callers;
+		private int[] receivers;
+		private int[] starts;
+		private int[] ends;
+		
+		private Batch(int capacity) {
+			size = 0;
+			months = new int[capacity];
+			callers = new int[capacity];
+			receivers = new int[capacity];
+			starts = new int[capacity];
+			ends = new int[capacity];
+		}
+		
+		private void add(int caller, int receiver, int month, int start, int end) {
+			months[size] = month;
+			callers[size] = caller;
+			receivers[size] = receiver;
+			starts[size] = start;
+			ends[size] = end;
+			size++;
+		}
+		
+		/*
+		 * Returns the index of the file the calls are from, in the order the files were given
+		 * */
+		public int getFile() {
+			return file;
+		}
+		
+		/*
+		 * Returns the number of calls in the batch
+		 * */
+		public int size() {
+			return size;
+		}
+		
+		/*
+		 * Hands the calls to a handler, in the order they were read
+		 * PARAMETER: CallHandler handler - receives each call
+		 * */
+		public void replay(CallHandler handler) {
+			for (int i = 0; i < size; i++)
+				handler.handleCall(callers[i], receivers[i], months[i] / 12, months[i] % 12 + 1, starts[i], ends[i]);
+		}
+	}
+}
@@ -0,0 +1,592 @@
+package analytics;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.TimeZone;
+
+/*
+ * Answers questions about the loaded calls without running the analysis, like the minutes each zone used
+ * in a week, the top callers, or every call between two areas. The totals by caller, area, zone and day
+ * are added up once when the query is made, and so is an index of who called whom, so each question is
+ * answered from memory by looking up or adding up a few numbers. The calls in a time window of the week
+ * are found with each month's CallTimeIndex.
+ *
+ * Calls are referred to by a number across all the months, the calls of the oldest month first. Use
+ * getPartition() and getCallIndex() to look a call up in its month.
+ * */
+
+public class CallQuery {
+	
+	//what to rank by in the top queries
+	public static final int CALLS = 0;//the number of calls made
+	public static final int SECONDS = 1;//the total length of the calls made
+	
+	private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+	
+	//the number of edges the index starts with room for
+	private static final int CHUNK_SIZE = 4096;
+	
+	private CallList list;
+	private MissionOrganization mission;
+	private List<CallPartition> months;
+	private int[] monthStarts;//the number of the first call of each month, followed by the number of calls
+	private int[] monthFirstDays;//the day number of the 1st of each month
+	private int dayCount;//the number of days from the 1st of the oldest month to the end of the newest month
+	private long firstDayMillis;//midnight on the 1st of the oldest month, in UTC
+	
+	//the totals of the calls made, indexed by phone id, area id, zone id and day number
+	private long[][] callerTotals;
+	private long[][] areaTotals;
+	private long[][] zoneTotals;
+	private long[][] dayTotals;
+	private long[] zoneDaySeconds;//the seconds each zone called on each day, at zone * dayCount + day
+	
+	//the phone id of each area
+	private int[] areaPhones;
+	
+	//who called whom: the phones called by phone p are receivers[callerStarts[p]] up to receivers[callerStarts[p + 1]],
+	//in order of phone id, and the calls between them are calls[edgeStarts[e]] up to calls[edgeStarts[e + 1]], oldest first
+	private int[] callerStarts;
+	private int[] receivers;
+	private long[] edgeSeconds;
+	private int[] edgeStarts;
+	private int[] calls;
+	
+	/*
+	 * Constructor, adds up the totals and builds the index of who called whom
+	 * PARAMETER: CallList list - the calls
+	 * PARAMETER: MissionOrganization mission - the areas and zones the calls are grouped by
+	 * */
+	public CallQuery(CallList list, MissionOrganization mission) {
+		this.list = list;
+		this.mission = mission;
+		months = list.getPartitions();
+		int phoneCount = months.isEmpty() ? 0 : months.get(0).getPhoneCount();
+		
+		//number the calls and days across the months
+		monthStarts = new int[months.size() + 1];
+		monthFirstDays = new int[months.size()];
+		for (int m = 0; m < months.size(); m++) {
+			CallPartition month = months.get(m);
+			monthStarts[m + 1] = monthStarts[m] + month.size();
+			long millis = getFirstDayMillis(month.getYear(), month.getMonthNumber());
+			if (m == 0)
+				firstDayMillis = millis;
+			monthFirstDays[m] = (int) ((millis - firstDayMillis) / MILLIS_PER_DAY);
+		}
+		if (!months.isEmpty()) {
+			CallPartition last = months.get(months.size() - 1);
+			int next = last.getYear() * 12 + last.getMonthNumber();
+			dayCount = (int) ((getFirstDayMillis(next / 12, next % 12 + 1) - firstDayMillis) / MILLIS_PER_DAY);
+		}
+		
+		areaPhones = new int[mission.getAreaCount()];
+		Arrays.fill(areaPhones, -1);
+		for (int phone = 0; phone < phoneCount; phone++) {
+			int area = mission.getAreaId(phone);
+			if (area >= 0)
+				areaPhones[area] = phone;
+		}
+		
+		addTotals(phoneCount);
+		buildIndex(phoneCount);
+	}
+	
+	/*
+	 * Works out when a month starts
+	 * PARAMETER: int year - the year
+	 * PARAMETER: int month - the month (1 - 12)
+	 * RETURN VALUE: long - midnight on the 1st of the month, in milliseconds since 1970 UTC
+	 * */
+	private static long getFirstDayMillis(int year, int month) {
+		Calendar calendar = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+		calendar.clear();
+		calendar.set(year, month - 1, 1);
+		return calendar.getTimeInMillis();
+	}
+	
+	/*
+	 * Adds up the calls and seconds of each caller, area, zone and day, in one pass over the calls
+	 * PARAMETER: int phoneCount - the number of phone ids
+	 * */
+	private void addTotals(int phoneCount) {
+		callerTotals = new long[2][phoneCount];
+		areaTotals = new long[2][mission.getAreaCount()];
+		zoneTotals = new long[2][mission.getZoneCount()];
+		dayTotals = new long[2][dayCount];
+		zoneDaySeconds = new long[mission.getZoneCount() * dayCount];
+		
+		for (int m = 0; m < months.size(); m++) {
+			CallPartition month = months.get(m);
+			for (int i = 0; i < month.size(); i++) {
+				int caller = month.getCallerId(i);
+				int seconds = month.getDuration(i);
+				int day = monthFirstDays[m] + month.getDay(i) - 1;
+				add(callerTotals, caller, seconds);
+				add(dayTotals, day, seconds);
+				
+				//only missionary numbers are in an area and zone
+				int area = mission.getAreaId(caller);
+				if (area < 0)
+					continue;
+				int zone = mission.getZone(area);
+				add(areaTotals, area, seconds);
+				add(zoneTotals, zone, seconds);
+				zoneDaySeconds[zone * dayCount + day] += seconds;
+			}
+		}
+	}
+	
+	/*
+	 * Counts a call in a set of totals
+	 * PARAMETER: long[][] totals - the calls and seconds, by whatever the totals are grouped by
+	 * PARAMETER: int index - the group the call is in
+	 * PARAMETER: int seconds - the length of the call
+	 * */
+	private static void add(long[][] totals, int index, int seconds) {
+		totals[CALLS][index]++;
+		totals[SECONDS][index] += seconds;
+	}
+	
+	/*
+	 * Builds the index of who called whom. The calls are sorted by caller with a counting sort, then each
+	 * caller's calls are sorted by receiver, keeping calls to the same receiver in the order they were made.
+	 * PARAMETER: int phoneCount - the number of phone ids
+	 * */
+	private void buildIndex(int phoneCount) {
+		int size = monthStarts[months.size()];
+		
+		//the calls of each caller go together, in the order they were made
+		callerStarts = new int[phoneCount + 1];
+		for (int phone = 0; phone < phoneCount; phone++)
+			callerStarts[phone + 1] = callerStarts[phone] + (int) callerTotals[CALLS][phone];
+		int[] next = Arrays.copyOf(callerStarts, phoneCount);
+		int[] byCaller = new int[size];
+		int[] callReceivers = new int[size];
+		int[] callSeconds = new int[size];
+		for (int m = 0; m < months.size(); m++) {
+			CallPartition month = months.get(m);
+			for (int i = 0; i < month.size(); i++) {
+				int call = monthStarts[m] + i;
+				byCaller[next[month.getCallerId(i)]++] = call;
+				callReceivers[call] = month.getReceiverId(i);
+				callSeconds[call] = month.getDuration(i);
+			}
+		}
+		
+		//sort each caller's calls by receiver, the low half of each key is where the call was, so ties keep their order
+		long[] keys = new long[size];
+		for (int k = 0; k < size; k++)
+			keys[k] = ((long) callReceivers[byCaller[k]] << 32) | k;
+		calls = new int[size];
+		int edges = 0;
+		int[] edgeReceivers = new int[Math.min(size, CHUNK_SIZE)];
+		int[] starts = new int[edgeReceivers.length + 1];
+		for (int phone = 0; phone < phoneCount; phone++) {
+			Arrays.sort(keys, callerStarts[phone], callerStarts[phone + 1]);
+			int firstEdge = edges;
+			for (int k = callerStarts[phone]; k < callerStarts[phone + 1]; k++) {
+				calls[k] = byCaller[(int) keys[k]];
+				int receiver = (int) (keys[k] >>> 32);
+				if (edges > firstEdge && edgeReceivers[edges - 1] == receiver)
+					continue;
+				
+				//a receiver this caller hasn't called before starts a new edge
+				if (edges == edgeReceivers.length) {
+					edgeReceivers = Arrays.copyOf(edgeReceivers, edges * 2);
+					starts = Arrays.copyOf(starts, edges * 2 + 1);
+				}
+				edgeReceivers[edges] = receiver;
+				starts[edges] = k;
+				edges++;
+			}
+			
+			//callerStarts becomes where each caller's edges start
+			callerStarts[phone] = firstEdge;
+		}
+		callerStarts[phoneCount] = edges;
+		starts[edges] = size;
+		receivers = Arrays.copyOf(edgeReceivers, edges);
+		edgeStarts = Arrays.copyOf(starts, edges + 1);
+		
+		//the length of the calls of each edge, for ranking who a phone calls the most
+		edgeSeconds = new long[edges];
+		for (int e = 0; e < edges; e++) {
+			for (int k = edgeStarts[e]; k < edgeStarts[e + 1]; k++)
+				edgeSeconds[e] += callSeconds[calls[k]];
+		}
+	}
+	
+	/*
+	 * Returns the call list the query is over
+	 * */
+	public CallList getCalls() {
+		return list;
+	}
+	
+	/*
+	 * Returns the mission organization the calls are grouped by
+	 * */
+	public MissionOrganization getMission() {
+		return mission;
+	}
+	
+	/*
+	 * Returns the number of calls
+	 * */
+	public int size() {
+		return monthStarts[months.size()];
+	}
+	
+	/*
+	 * Returns the month a call is in
+	 * PARAMETER: int call - the number of the call
+	 * RETURN VALUE: CallPartition - the month's calls
+	 * */
+	public CallPartition getPartition(int call) {
+		return months.get(getMonthOf(call));
+	}
+	
+	/*
+	 * Returns the index of a call in its month
+	 * PARAMETER: int call - the number of the call
+	 * RETURN VALUE: int - the index of the call in the partition getPartition() returns
+	 * */
+	public int getCallIndex(int call) {
+		return call - monthStarts[getMonthOf(call)];
+	}
+	
+	/*
+	 * Finds the month a call is in
+	 * PARAMETER: int call - the number of the call
+	 * RETURN VALUE: int - the index of the month
+	 * THROWS: IllegalArgumentException if there's no call with that number
+	 * */
+	private int getMonthOf(int call) {
+		if (call < 0 || call >= size())
+			throw new IllegalArgumentException("There is no call number " + call);
+		int month = Arrays.binarySearch(monthStarts, call);
+		if (month < 0)
+			return -month - 2;
+		
+		//months without calls start at the same number as the next month
+		while (monthStarts[month + 1] == call)
+			month++;
+		return month;
+	}
+	
+	/*
+	 * Returns the number of calls a phone number made
+	 * PARAMETER: int phone - the id of the phone number
+	 * */
+	public long getCallerCalls(int phone) {
+		return phone < callerTotals[CALLS].length ? callerTotals[CALLS][phone] : 0;
+	}
+	
+	/*
+	 * Returns the total length of the calls a phone number made
+	 * PARAMETER: int phone - the id of the phone number
+	 * RETURN VALUE: long - the number of seconds
+	 * */
+	public long getCallerSeconds(int phone) {
+		return phone < callerTotals[SECONDS].length ? callerTotals[SECONDS][phone] : 0;
+	}
+	
+	/*
+	 * Returns the number of calls an area made
+	 * PARAMETER: int area - the id of the area
+	 * */
+	public long getAreaCalls(int area) {
+		return areaTotals[CALLS][area];
+	}
+	
+	/*
+	 * Returns the total length of the calls an area made
+	 * PARAMETER: int area - the id of the area
+	 * RETURN VALUE: long - the number of seconds
+	 * */
+	public long getAreaSeconds(int area) {
+		return areaTotals[SECONDS][area];
+	}
+	
+	/*
+	 * Returns the number of calls the areas of a zone made
+	 * PARAMETER: int zone - the zone id
+	 * */
+	public long getZoneCalls(int zone) {
+		return zoneTotals[CALLS][zone];
+	}
+	
+	/*
+	 * Returns the total length of the calls the areas of a zone made
+	 * PARAMETER: int zone - the zone id
+	 * RETURN VALUE: long - the number of seconds
+	 * */
+	public long getZoneSeconds(int zone) {
+		return zoneTotals[SECONDS][zone];
+	}
+	
+	/*
+	 * Returns the total length of the calls the areas of a zone made over a range of days, such as a week
+	 * PARAMETER: int zone - the zone id
+	 * PARAMETER: int fromDay - the number of the first day
+	 * PARAMETER: int toDay - the number of the day after the range
+	 * RETURN VALUE: long - the number of seconds
+	 * THROWS: IllegalArgumentException if the range isn't inside the months of calls
+	 * */
+	public long getZoneSeconds(int zone, int fromDay, int toDay) {
+		if (fromDay < 0 || toDay > dayCount || toDay < fromDay)
+			throw new IllegalArgumentException("The days must be inside the months of calls: " + fromDay + " - " + toDay);
+		long seconds = 0;
+		for (int day = fromDay; day < toDay; day++)
+			seconds += zoneDaySeconds[zone * dayCount + day];
+		return seconds;
+	}
+	
+	/*
+	 * Returns the number of days the calls are numbered over, from the 1st of the oldest month to the end
+	 * of the newest month. Day 0 is the 1st of the oldest month.
+	 * */
+	public int getDayCount() {
+		return dayCount;
+	}
+	
+	/*
+	 * Returns the date of a day
+	 * PARAMETER: int day - the number of the day
+	 * RETURN VALUE: Calendar - midnight at the start of the day, in UTC
+	 * */
+	public Calendar getDate(int day) {
+		Calendar calendar = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+		calendar.setTimeInMillis(firstDayMillis + day * MILLIS_PER_DAY);
+		return calendar;
+	}
+	
+	/*
+	 * Returns the number of calls made on a day
+	 * PARAMETER: int day - the number of the day
+	 * */
+	public long getDayCalls(int day) {
+		return dayTotals[CALLS][day];
+	}
+	
+	/*
+	 * Returns the total length of the calls made on a day
+	 * PARAMETER: int day - the number of the day
+	 * RETURN VALUE: long - the number of seconds
+	 * */
+	public long getDaySeconds(int day) {
+		return dayTotals[SECONDS][day];
+	}
+	
+	/*
+	 * Returns the phone numbers that made the most calls or called the longest
+	 * PARAMETER: int count - the most phone numbers to return
+	 * PARAMETER: int by - CALLS or SECONDS
+	 * RETURN VALUE: int[] - the ids of the phone numbers, highest first, only ones that made a call are included
+	 * */
+	public int[] getTopCallers(int count, int by) {
+		return getTop(callerTotals[by], count);
+	}
+	
+	/*
+	 * Returns the areas that made the most calls or called the longest
+	 * PARAMETER: int count - the most areas to return
+	 * PARAMETER: int by - CALLS or SECONDS
+	 * RETURN VALUE: int[] - the area ids, highest first, only ones that made a call are included
+	 * */
+	public int[] getTopAreas(int count, int by) {
+		return getTop(areaTotals[by], count);
+	}
+	
+	/*
+	 * Returns the zones that made the most calls or called the longest
+	 * PARAMETER: int count - the most zones to return
+	 * PARAMETER: int by - CALLS or SECONDS
+	 * RETURN VALUE: int[] - the zone ids, highest first, only ones that made a call are included
+	 * */
+	public int[] getTopZones(int count, int by) {
+		return getTop(zoneTotals[by], count);
+	}
+	
+	/*
+	 * Returns the phone numbers a phone number called the most or the longest
+	 * PARAMETER: int caller - the id of the phone number that made the calls
+	 * PARAMETER: int count - the most phone numbers to return
+	 * PARAMETER: int by - CALLS or SECONDS
+	 * RETURN VALUE: int[] - the ids of the phone numbers called, highest first
+	 * */
+	public int[] getTopReceivers(int caller, int count, int by) {
+		if (caller < 0 || caller >= callerStarts.length - 1)
+			return new int[0];
+		
+		int first = callerStarts[caller];
+		long[] values = new long[callerStarts[caller + 1] - first];
+		for (int e = 0; e < values.length; e++)
+			values[e] = by == CALLS ? edgeStarts[first + e + 1] - edgeStarts[first + e] : edgeSeconds[first + e];
+		int[] top = getTop(values, count);
+		for (int i = 0; i < top.length; i++)
+			top[i] = receivers[first + top[i]];
+		return top;
+	}
+	
+	/*
+	 * Picks out the highest values, keeping the best ones found so far in order as it goes
+	 * PARAMETER: long[] values - the values
+	 * PARAMETER: int count - the most to pick
+	 * RETURN VALUE: int[] - the indices of the highest values above zero, highest first, ties in index order
+	 * */
+	private static int[] getTop(long[] values, int count) {
+		if (count < 0)
+			throw new IllegalArgumentException("The number of results can't be negative: " + count);
+		int[] top = new int[Math.min(count, values.length)];
+		int found = 0;
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] == 0 || (found == top.length && (found == 0 || values[i] <= values[top[found - 1]])))
+				continue;
+			
+			//slide the lower ones down to make room
+			int place = Math.min(found, top.length - 1);
+			while (place > 0 && values[top[place - 1]] < values[i]) {
+				top[place] = top[place - 1];
+				place--;
+			}
+			top[place] = i;
+			if (found < top.length)
+				found++;
+		}
+		return found == top.length ? top : Arrays.copyOf(top, found);
+	}
+	
+	/*
+	 * Returns the phone numbers a phone number called
+	 * PARAMETER: int caller - the id of the phone number that made the calls
+	 * RETURN VALUE: int[] - the ids of the phone numbers called, lowest id first
+	 * */
+	public int[] getReceivers(int caller) {
+		if (caller < 0 || caller >= callerStarts.length - 1)
+			return new int[0];
+		return Arrays.copyOfRange(receivers, callerStarts[caller], callerStarts[caller + 1]);
+	}
+	
+	/*
+	 * Returns the calls one phone number made to another
+	 * PARAMETER: int caller - the id of the phone number that made the calls
+	 * PARAMETER: int receiver - the id of the phone number that was called
+	 * RETURN VALUE: int[] - the numbers of the calls, oldest first
+	 * */
+	public int[] getCallsBetween(int caller, int receiver) {
+		int edge = findEdge(caller, receiver);
+		if (edge < 0)
+			return new int[0];
+		return Arrays.copyOfRange(calls, edgeStarts[edge], edgeStarts[edge + 1]);
+	}
+	
+	/*
+	 * Returns the total length of the calls one phone number made to another
+	 * PARAMETER: int caller - the id of the phone number that made the calls
+	 * PARAMETER: int receiver - the id of the phone number that was called
+	 * RETURN VALUE: long - the number of seconds
+	 * */
+	public long getSecondsBetween(int caller, int receiver) {
+		int edge = findEdge(caller, receiver);
+		return edge < 0 ? 0 : edgeSeconds[edge];
+	}
+	
+	/*
+	 * Returns the calls two areas made to each other, either way
+	 * PARAMETER: int area1 - the id of one area
+	 * PARAMETER: int area2 - the id of the other area
+	 * RETURN VALUE: int[] - the numbers of the calls, oldest first
+	 * */
+	public int[] getAreaCallsBetween(int area1, int area2) {
+		int phone1 = areaPhones[area1];
+		int phone2 = areaPhones[area2];
+		if (phone1 < 0 || phone2 < 0)
+			return new int[0];
+		int[] there = getCallsBetween(phone1, phone2);
+		if (phone1 == phone2)
+			return there;
+		
+		//both lists are already oldest first, so merging them keeps the order
+		int[] back = getCallsBetween(phone2, phone1);
+		int[] merged = new int[there.length + back.length];
+		int i = 0;
+		int j = 0;
+		for (int k = 0; k < merged.length; k++) {
+			if (j == back.length || (i < there.length && there[i] < back[j]))
+				merged[k] = there[i++];
+			else
+				merged[k] = back[j++];
+		}
+		return merged;
+	}
+	
+	/*
+	 * Returns the calls a phone number made in a window of the week, in every week of every month. Each
+	 * month's time index is used, so only the calls that started in the window are looked at.
+	 * PARAMETER: int caller - the id of the phone number that made the calls, -1 = any phone number
+	 * PARAMETER: int from - the first minute of the window, as a minute of the week (see CallTimeIndex)
+	 * PARAMETER: int to - the minute after the window ends, if it's before from the window wraps around the end of the week
+	 * RETURN VALUE: int[] - the numbers of the calls, oldest first
+	 * THROWS: IllegalArgumentException if either end of the window isn't a minute of the week
+	 * */
+	public int[] getCallsInWindow(int caller, int from, int to) {
+		int[][] found = new int[months.size()][];
+		for (int m = 0; m < months.size(); m++)
+			found[m] = months.get(m).getTimeIndex().getCalls(from, to, caller);
+		return toCallNumbers(found);
+	}
+	
+	/*
+	 * Returns the calls a phone number made in a window of one day, in every week of every month
+	 * PARAMETER: int caller - the id of the phone number that made the calls, -1 = any phone number
+	 * PARAMETER: int dayOfWeek - the day of the week, as a Calendar constant
+	 * PARAMETER: int fromMinute - the first minute of the window (minutes since midnight)
+	 * PARAMETER: int toMinute - the minute after the window ends, if it's before fromMinute the window goes on past midnight
+	 * RETURN VALUE: int[] - the numbers of the calls, oldest first
+	 * THROWS: IllegalArgumentException if the window isn't inside the day
+	 * */
+	public int[] getCallsInWindow(int caller, int dayOfWeek, int fromMinute, int toMinute) {
+		int[][] found = new int[months.size()][];
+		for (int m = 0; m < months.size(); m++)
+			found[m] = months.get(m).getTimeIndex().getCalls(dayOfWeek, fromMinute, toMinute, caller);
+		return toCallNumbers(found);
+	}
+	
+	/*
+	 * Turns the calls found in each month into numbers across all the months
+	 * PARAMETER: int[][] found - the indices of the calls in each month, in any order
+	 * RETURN VALUE: int[] - the numbers of the calls, oldest first
+	 * */
+	private int[] toCallNumbers(int[][] found) {
+		int count = 0;
+		for (int m = 0; m < found.length; m++)
+			count += found[m].length;
+		
+		//the time index has the calls in order of the time of the week, so they're put back in the order they were made
+		int[] numbers = new int[count];
+		int next = 0;
+		for (int m = 0; m < found.length; m++) {
+			Arrays.sort(found[m]);
+			for (int i = 0; i < found[m].length; i++)
+				numbers[next++] = monthStarts[m] + found[m][i];
+		}
+		return numbers;
+	}
+	
+	/*
+	 * Finds the edge from one phone number to another in the index
+	 * PARAMETER: int caller - the id of the phone number that made the calls
+	 * PARAMETER: int receiver - the id of the phone number that was called
+	 * RETURN VALUE: int - the edge, -1 if the caller never called the receiver
+	 * */
+	private int findEdge(int caller, int receiver) {
+		if (caller < 0 || caller >= callerStarts.length - 1)
+			return -1;
+		int edge = Arrays.binarySearch(receivers, callerStarts[caller], callerStarts[caller + 1], receiver);
+		return edge < 0 ? -1 : edge;
+	}
+}
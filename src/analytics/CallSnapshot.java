@@ -0,0 +1,285 @@
+package analytics;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import excel.CallHandler;
+
+/*
+ * Saves the calls read out of a call list file to a compact binary file next to it, so later runs can
+ * memory-map the snapshot instead of decoding the workbook again. A snapshot is only used if the size,
+ * modification time and checksum of the call list file still match the ones it was made from.
+ *
+ * The snapshot is stored column by column, in big endian order:
+ * 	header - magic number, version, source size, source modification time, source checksum
+ * 	phones - the number of phone numbers, then each one as a length and UTF-8 bytes
+ * 	calls - the number of calls, then the months, callers, receivers, starts and ends as ints
+ * Callers and receivers are indices into the snapshot's own phone numbers, they are turned into ids
+ * of the phone directory as the snapshot is read.
+ * */
+
+class CallSnapshot {
+	
+	private static final int MAGIC = 0x50414353;//"PACS"
+	private static final int VERSION = 2;
+	
+	//added onto the call list file's name to get the snapshot's name
+	private static final String EXTENSION = ".snapshot";
+	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	//the number of calls the columns start with while they're being recorded, they double in size when they fill up
+	private static final int CHUNK_SIZE = 4096;
+	
+	/*
+	 * Reads the calls out of the snapshot of a call list file, handing each one to the handler
+	 * PARAMETER: String sourcePath - the location of the call list file the snapshot was made from
+	 * PARAMETER: PhoneDirectory phones - gives the ids of the caller and receiver of each call
+	 * PARAMETER: CallHandler handler - receives each call, in the order they were in the file
+	 * RETURN VALUE: boolean - true = the calls were read, false = there's no snapshot or it doesn't match the file
+	 * */
+	public static boolean read(String sourcePath, PhoneDirectory phones, CallHandler handler) throws IOException {
+		File source = new File(sourcePath);
+		File snapshot = new File(sourcePath + EXTENSION);
+		if (!source.isFile() || !snapshot.isFile())
+			return false;
+		
+		RandomAccessFile file = new RandomAccessFile(snapshot, "r");
+		String[] snapshotPhones;
+		int size;
+		IntBuffer months, callers, receivers, starts, ends;
+		try {
+			FileChannel channel = file.getChannel();
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			
+			//make sure the snapshot was made from the file as it is now
+			if (buffer.remaining() < 28 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+				return false;
+			if (buffer.getLong() != source.length() || buffer.getLong() != source.lastModified())
+				return false;
+			if (buffer.getInt() != checksum(source))
+				return false;
+			
+			//the snapshot's phone numbers only go into the directory once the whole snapshot has been checked,
+			//so one that turns out to be damaged doesn't leave its numbers behind
+			int phoneCount = buffer.getInt();
+			if (phoneCount < 0 || phoneCount > buffer.remaining() / 2)
+				return false;
+			snapshotPhones = new String[phoneCount];
+			for (int i = 0; i < snapshotPhones.length; i++) {
+				byte[] phone = new byte[buffer.getShort() & 0xffff];
+				buffer.get(phone);
+				snapshotPhones[i] = new String(phone, UTF8);
+			}
+			
+			//the columns of the calls follow
+			size = buffer.getInt();
+			if (buffer.remaining() != (long) size * 5 * 4)
+				return false;
+			months = slice(buffer, size * 4).asIntBuffer();
+			callers = slice(buffer, size * 4).asIntBuffer();
+			receivers = slice(buffer, size * 4).asIntBuffer();
+			starts = slice(buffer, size * 4).asIntBuffer();
+			ends = slice(buffer, size * 4).asIntBuffer();
+			
+			//check every phone number is one of the snapshot's before handing any calls on
+			for (int i = 0; i < size; i++) {
+				if (callers.get(i) < 0 || callers.get(i) >= snapshotPhones.length || receivers.get(i) < 0 || receivers.get(i) >= snapshotPhones.length)
+					return false;
+			}
+		}
+		catch (BufferUnderflowException e) {
+			//a damaged snapshot is just ignored, the call list file will be read instead
+			return false;
+		}
+		finally {
+			file.close();
+		}
+		
+		//look up the snapshot's phone numbers in the directory
+		int[] ids = new int[snapshotPhones.length];
+		for (int i = 0; i < ids.length; i++)
+			ids[i] = phones.getId(snapshotPhones[i]);
+		
+		for (int i = 0; i < size; i++) {
+			int month = months.get(i);
+			handler.handleCall(ids[callers.get(i)], ids[receivers.get(i)], month / 12, month % 12 + 1,
+					starts.get(i), ends.get(i));
+		}
+		return true;
+	}
+	
+	/*
+	 * Takes the next part of a buffer as a buffer of its own and moves past it
+	 * PARAMETER: ByteBuffer buffer - the buffer
+	 * PARAMETER: int length - the number of bytes to take
+	 * RETURN VALUE: ByteBuffer - the part of the buffer
+	 * */
+	private static ByteBuffer slice(ByteBuffer buffer, int length) {
+		ByteBuffer part = buffer.slice();
+		part.limit(length);
+		buffer.position(buffer.position() + length);
+		return part;
+	}
+	
+	/*
+	 * Works out the checksum of a file
+	 * PARAMETER: File file - the file
+	 * RETURN VALUE: int - the CRC-32 of the file's contents
+	 * */
+	private static int checksum(File file) throws IOException {
+		RandomAccessFile input = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = input.getChannel();
+			CRC32 crc = new CRC32();
+			crc.update(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+			return (int) crc.getValue();
+		}
+		finally {
+			input.close();
+		}
+	}
+	
+	/*
+	 * Passes calls on to another handler while keeping a copy of them, so a snapshot can be written once
+	 * the whole call list file has been read. The copy can also be handed on again later with replay().
+	 * */
+	public static class Recorder implements CallHandler {
+		private PhoneDirectory phones;
+		private CallHandler handler;
+		
+		//the calls seen so far, column by column
+		private int size;
+		private int[] months;//the number of months since year 0
+		private int[] callers;
+		private int[] receivers;
+		private int[] starts;
+		private int[] ends;
+		
+		/*
+		 * Constructor
+		 * PARAMETER: PhoneDirectory phones - the directory the calls' phone ids are from
+		 * PARAMETER: CallHandler handler - the handler the calls are passed on to, null = only keep the copy
+		 * */
+		public Recorder(PhoneDirectory phones, CallHandler handler) {
+			this.phones = phones;
+			this.handler = handler;
+			size = 0;
+			months = new int[CHUNK_SIZE];
+			callers = new int[CHUNK_SIZE];
+			receivers = new int[CHUNK_SIZE];
+			starts = new int[CHUNK_SIZE];
+			ends = new int[CHUNK_SIZE];
+		}
+		
+		public void handleCall(int caller, int receiver, int year, int month, int start, int end) {
+			if (size == callers.length) {
+				months = Arrays.copyOf(months, size * 2);
+				callers = Arrays.copyOf(callers, size * 2);
+				receivers = Arrays.copyOf(receivers, size * 2);
+				starts = Arrays.copyOf(starts, size * 2);
+				ends = Arrays.copyOf(ends, size * 2);
+			}
+			months[size] = year * 12 + month - 1;
+			callers[size] = caller;
+			receivers[size] = receiver;
+			starts[size] = start;
+			ends[size] = end;
+			size++;
+			
+			if (handler != null)
+				handler.handleCall(caller, receiver, year, month, start, end);
+		}
+		
+		/*
+		 * Hands the recorded calls to a handler, in the order they were recorded
+		 * PARAMETER: CallHandler handler - receives each call
+		 * */
+		public void replay(CallHandler handler) {
+			for (int i = 0; i < size; i++)
+				handler.handleCall(callers[i], receivers[i], months[i] / 12, months[i] % 12 + 1, starts[i], ends[i]);
+		}
+		
+		/*
+		 * Writes the recorded calls to the snapshot of the call list file. The snapshot is written to a
+		 * temporary file first so a run that stops part way through never leaves a broken snapshot behind.
+		 * PARAMETER: String sourcePath - the location of the call list file the calls were read from
+		 * RETURN VALUE: boolean - true = the snapshot was written, false = it couldn't be written
+		 * */
+		public boolean write(String sourcePath) {
+			File source = new File(sourcePath);
+			File snapshot = new File(sourcePath + EXTENSION);
+			File temp = new File(sourcePath + EXTENSION + ".tmp");
+			
+			try {
+				//only the phone numbers that are in the calls go into the snapshot, numbered in the order they're first seen
+				int[] localIds = new int[phones.size()];
+				Arrays.fill(localIds, -1);
+				int[] phoneIds = new int[CHUNK_SIZE];
+				int phoneCount = 0;
+				for (int i = 0; i < size * 2; i++) {
+					int id = i < size ? callers[i] : receivers[i - size];
+					if (localIds[id] < 0) {
+						if (phoneCount == phoneIds.length)
+							phoneIds = Arrays.copyOf(phoneIds, phoneCount * 2);
+						localIds[id] = phoneCount;
+						phoneIds[phoneCount++] = id;
+					}
+				}
+				
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+				try {
+					out.writeInt(MAGIC);
+					out.writeInt(VERSION);
+					out.writeLong(source.length());
+					out.writeLong(source.lastModified());
+					out.writeInt(checksum(source));
+					
+					out.writeInt(phoneCount);
+					for (int i = 0; i < phoneCount; i++) {
+						byte[] phone = phones.getPhone(phoneIds[i]).getBytes(UTF8);
+						out.writeShort(phone.length);
+						out.write(phone);
+					}
+					
+					out.writeInt(size);
+					for (int i = 0; i < size; i++)
+						out.writeInt(months[i]);
+					for (int i = 0; i < size; i++)
+						out.writeInt(localIds[callers[i]]);
+					for (int i = 0; i < size; i++)
+						out.writeInt(localIds[receivers[i]]);
+					for (int i = 0; i < size; i++)
+						out.writeInt(starts[i]);
+					for (int i = 0; i < size; i++)
+						out.writeInt(ends[i]);
+				}
+				finally {
+					out.close();
+				}
+				
+				//replace the old snapshot, if there is one
+				snapshot.delete();
+				if (temp.renameTo(snapshot))
+					return true;
+			}
+			catch (IOException e) {
+				e.printStackTrace();
+			}
+			temp.delete();
+			return false;
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package analytics;
+
+/*
+ * Stores the caller, receiver, start and end of each call in a month. The calls can be kept in arrays on
+ * the heap or in fixed width records off the heap, CallPartition reads them the same way either way.
+ * */
+
+interface CallStore {
+	
+	/*
+	 * Adds a call onto the end of the store
+	 * PARAMETER: int caller - the id of the phone number that made the call
+	 * PARAMETER: int receiver - the id of the phone number that was called
+	 * PARAMETER: int start - the start of the call in seconds since the start of the month
+	 * PARAMETER: int end - the end of the call in seconds since the start of the month
+	 * */
+	public void add(int caller, int receiver, int start, int end);
+	
+	/*
+	 * Returns the number of calls in the store
+	 * */
+	public int size();
+	
+	/*
+	 * Takes every call out of the store, the space they used is kept for the calls added next
+	 * */
+	public void clear();
+	
+	/*
+	 * Lets go of anything the store keeps outside of the heap, such as the file its calls are in. The store
+	 * can't be used after it's closed.
+	 * */
+	public void close();
+	
+	/*
+	 * Returns the id of the phone number that made a call
+	 * PARAMETER: int call - the index of the call
+	 * */
+	public int getCaller(int call);
+	
+	/*
+	 * Returns the id of the phone number that received a call
+	 * PARAMETER: int call - the index of the call
+	 * */
+	public int getReceiver(int call);
+	
+	/*
+	 * Returns the start of a call in seconds since the start of the month
+	 * PARAMETER: int call - the index of the call
+	 * */
+	public int getStart(int call);
+	
+	/*
+	 * Returns the end of a call in seconds since the start of the month
+	 * PARAMETER: int call - the index of the call
+	 * */
+	public int getEnd(int call);
+}
@@ -0,0 +1,159 @@
+package analytics;
+
+import java.util.Arrays;
+import java.util.Calendar;
+
+/*
+ * Indexes the calls of a month by the minute of the week they started in (Sunday 00:00 = 0), so the calls
+ * in a time window, like night hours or proselyting hours on a certain day, can be found without looking
+ * at every call. The calls are sorted into buckets, one per minute of the week, with a counting sort, and
+ * calls in the same minute stay in the order they're in the month. It's for looking calls up, like CallQuery
+ * does, the rules test their windows on each call in the RuleEngine's single pass instead.
+ * */
+
+public class CallTimeIndex {
+	
+	public static final int MINUTES_PER_DAY = 24 * 60;
+	public static final int MINUTES_PER_WEEK = 7 * MINUTES_PER_DAY;
+	
+	private CallPartition calls;
+	
+	//the indices of the calls, sorted by the minute of the week they started
+	private int[] sorted;
+	
+	//the calls that started in minute m of the week are sorted[bucketStarts[m]] up to sorted[bucketStarts[m + 1]]
+	private int[] bucketStarts;
+	
+	/*
+	 * Constructor, builds the index
+	 * PARAMETER: CallPartition calls - the calls to index
+	 * */
+	CallTimeIndex(CallPartition calls) {
+		this.calls = calls;
+		int size = calls.size();
+		
+		//work out the minute of the week of each call and count how many calls start in each minute
+		int[] minutes = new int[size];
+		bucketStarts = new int[MINUTES_PER_WEEK + 1];
+		for (int i = 0; i < size; i++) {
+			minutes[i] = getMinuteOfWeek(calls.getDayOfWeek(i), calls.getStartMinute(i));
+			bucketStarts[minutes[i] + 1]++;
+		}
+		
+		//turn the counts into where each bucket starts, then drop each call into its bucket
+		for (int m = 0; m < MINUTES_PER_WEEK; m++)
+			bucketStarts[m + 1] += bucketStarts[m];
+		int[] next = Arrays.copyOf(bucketStarts, MINUTES_PER_WEEK);
+		sorted = new int[size];
+		for (int i = 0; i < size; i++)
+			sorted[next[minutes[i]]++] = i;
+	}
+	
+	/*
+	 * Works out the minute of the week of a time
+	 * PARAMETER: int dayOfWeek - the day of the week, as a Calendar constant
+	 * PARAMETER: int minute - the minute of the day (minutes since midnight)
+	 * RETURN VALUE: int - the minutes since Sunday 00:00
+	 * */
+	public static int getMinuteOfWeek(int dayOfWeek, int minute) {
+		return (dayOfWeek - Calendar.SUNDAY) * MINUTES_PER_DAY + minute;
+	}
+	
+	/*
+	 * Returns the number of calls in the index
+	 * */
+	public int size() {
+		return sorted.length;
+	}
+	
+	/*
+	 * Counts the calls that started in a window of the week
+	 * PARAMETER: int from - the first minute of the window, as a minute of the week
+	 * PARAMETER: int to - the minute after the window ends, if it's before from the window wraps around the end of the week
+	 * RETURN VALUE: int - the number of calls that started in the window
+	 * */
+	public int count(int from, int to) {
+		checkWindow(from, to);
+		if (from <= to)
+			return bucketStarts[to] - bucketStarts[from];
+		return (sorted.length - bucketStarts[from]) + bucketStarts[to];
+	}
+	
+	/*
+	 * Gets the calls that started in a window of the week
+	 * PARAMETER: int from - the first minute of the window, as a minute of the week
+	 * PARAMETER: int to - the minute after the window ends, if it's before from the window wraps around the end of the week
+	 * RETURN VALUE: int[] - the indices of the calls, in the order of the time of the week they started
+	 * */
+	public int[] getCalls(int from, int to) {
+		return getCalls(from, to, -1);
+	}
+	
+	/*
+	 * Gets the calls one phone number made in a window of the week
+	 * PARAMETER: int from - the first minute of the window, as a minute of the week
+	 * PARAMETER: int to - the minute after the window ends, if it's before from the window wraps around the end of the week
+	 * PARAMETER: int caller - the id of the phone number that made the calls, -1 = any phone number
+	 * RETURN VALUE: int[] - the indices of the calls, in the order of the time of the week they started
+	 * */
+	public int[] getCalls(int from, int to, int caller) {
+		checkWindow(from, to);
+		int[] found = new int[count(from, to)];
+		int count = 0;
+		if (from <= to)
+			count = collect(bucketStarts[from], bucketStarts[to], caller, found, count);
+		else {
+			count = collect(bucketStarts[from], sorted.length, caller, found, count);
+			count = collect(0, bucketStarts[to], caller, found, count);
+		}
+		return count == found.length ? found : Arrays.copyOf(found, count);
+	}
+	
+	/*
+	 * Gets the calls one phone number made in a window of one day, every week of the month
+	 * PARAMETER: int dayOfWeek - the day of the week, as a Calendar constant
+	 * PARAMETER: int fromMinute - the first minute of the window (minutes since midnight)
+	 * PARAMETER: int toMinute - the minute after the window ends, if it's before fromMinute the window goes on past midnight
+	 * PARAMETER: int caller - the id of the phone number that made the calls, -1 = any phone number
+	 * RETURN VALUE: int[] - the indices of the calls, in the order of the time of the week they started
+	 * THROWS: IllegalArgumentException if the day isn't a day of the week or either minute isn't a minute of the day
+	 * */
+	public int[] getCalls(int dayOfWeek, int fromMinute, int toMinute, int caller) {
+		if (dayOfWeek < Calendar.SUNDAY || dayOfWeek > Calendar.SATURDAY)
+			throw new IllegalArgumentException("The time window must be on a day of the week: " + dayOfWeek);
+		if (fromMinute < 0 || fromMinute >= MINUTES_PER_DAY || toMinute < 0 || toMinute >= MINUTES_PER_DAY)
+			throw new IllegalArgumentException("The time window must be inside the day: " + fromMinute + " - " + toMinute);
+		
+		int from = getMinuteOfWeek(dayOfWeek, fromMinute);
+		int to = getMinuteOfWeek(dayOfWeek, toMinute);
+		if (toMinute < fromMinute)
+			to = (to + MINUTES_PER_DAY) % MINUTES_PER_WEEK;
+		return getCalls(from, to, caller);
+	}
+	
+	/*
+	 * Copies the calls in part of the sorted list that were made by a phone number
+	 * PARAMETER: int start - the first place in the sorted list
+	 * PARAMETER: int end - the place after the last one
+	 * PARAMETER: int caller - the id of the phone number, -1 = any phone number
+	 * PARAMETER: int[] found - where to copy the calls to
+	 * PARAMETER: int count - how many calls have been copied already
+	 * RETURN VALUE: int - how many calls have been copied now
+	 * */
+	private int collect(int start, int end, int caller, int[] found, int count) {
+		for (int i = start; i < end; i++) {
+			if (caller < 0 || calls.getCallerId(sorted[i]) == caller)
+				found[count++] = sorted[i];
+		}
+		return count;
+	}
+	
+	/*
+	 * Makes sure a window is inside the week
+	 * THROWS: IllegalArgumentException if either end of the window isn't a minute of the week
+	 * */
+	private static void checkWindow(int from, int to) {
+		if (from < 0 || from > MINUTES_PER_WEEK || to < 0 || to > MINUTES_PER_WEEK)
+			throw new IllegalArgumentException("The time window must be inside the week: " + from + " - " + to);
+	}
+}
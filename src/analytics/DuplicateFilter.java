@@ -0,0 +1,113 @@
+package analytics;
+
+/*
+ * Spots calls that more than one call list file has in them, for when exports overlap. A call is the same
+ * as another if it has the same month, caller, receiver, start and end. Calls repeated inside one file
+ * are kept, only a repeat of a call from a different file is a duplicate.
+ *
+ * The calls are kept in an open addressed hash table of ints, so nothing is allocated per call.
+ * */
+
+class DuplicateFilter {
+	
+	//each slot of the table is this many ints: month, caller, receiver, start, end, file
+	private static final int SLOT_SIZE = 6;
+	private static final int MONTH = 0;
+	private static final int CALLER = 1;
+	private static final int RECEIVER = 2;
+	private static final int START = 3;
+	private static final int END = 4;
+	private static final int FILE = 5;
+	
+	//the number of slots there are at first, the table doubles when it gets half full
+	private static final int FIRST_SLOTS = 1 << 14;
+	
+	private int[] table;
+	private int slots;
+	private int used;
+	
+	public DuplicateFilter() {
+		setSlots(FIRST_SLOTS);
+		used = 0;
+	}
+	
+	/*
+	 * Makes an empty table, a slot with a caller of -1 is empty
+	 * PARAMETER: int count - the number of slots, a power of two
+	 * */
+	private void setSlots(int count) {
+		slots = count;
+		table = new int[count * SLOT_SIZE];
+		for (int i = 0; i < count; i++)
+			table[i * SLOT_SIZE + CALLER] = -1;
+	}
+	
+	/*
+	 * Checks whether a call was already in an earlier file, remembering it if it wasn't
+	 * PARAMETER: int month - the number of months since year 0 of the call
+	 * PARAMETER: int caller - the id of the phone number that made the call
+	 * PARAMETER: int receiver - the id of the phone number that was called
+	 * PARAMETER: int start - the start of the call in seconds since the start of the month
+	 * PARAMETER: int end - the end of the call in seconds since the start of the month
+	 * PARAMETER: int file - the index of the file the call is from, files must be checked in order
+	 * RETURN VALUE: boolean - true = a different file already had the call, false = it's new, or only repeated in this file
+	 * */
+	public boolean isDuplicate(int month, int caller, int receiver, int start, int end, int file) {
+		int slot = find(month, caller, receiver, start, end);
+		int index = slot * SLOT_SIZE;
+		if (table[index + CALLER] >= 0)
+			return table[index + FILE] != file;
+		
+		table[index + MONTH] = month;
+		table[index + CALLER] = caller;
+		table[index + RECEIVER] = receiver;
+		table[index + START] = start;
+		table[index + END] = end;
+		table[index + FILE] = file;
+		used++;
+		if (used * 2 > slots)
+			grow();
+		return false;
+	}
+	
+	/*
+	 * Finds the slot a call is in, or the empty slot it would go in
+	 * RETURN VALUE: int - the index of the slot
+	 * */
+	private int find(int month, int caller, int receiver, int start, int end) {
+		int hash = month;
+		hash = hash * 31 + caller;
+		hash = hash * 31 + receiver;
+		hash = hash * 31 + start;
+		hash = hash * 31 + end;
+		hash ^= hash >>> 16;
+		
+		int mask = slots - 1;
+		int slot = (hash * 0x9e3779b9) >>> 1 & mask;
+		while (true) {
+			int index = slot * SLOT_SIZE;
+			if (table[index + CALLER] < 0)
+				return slot;
+			if (table[index + CALLER] == caller && table[index + RECEIVER] == receiver && table[index + START] == start &&
+					table[index + END] == end && table[index + MONTH] == month)
+				return slot;
+			slot = (slot + 1) & mask;
+		}
+	}
+	
+	/*
+	 * Doubles the number of slots, putting every call back in
+	 * */
+	private void grow() {
+		int[] old = table;
+		int oldSlots = slots;
+		setSlots(slots * 2);
+		for (int i = 0; i < oldSlots; i++) {
+			int index = i * SLOT_SIZE;
+			if (old[index + CALLER] < 0)
+				continue;
+			int slot = find(old[index + MONTH], old[index + CALLER], old[index + RECEIVER], old[index + START], old[index + END]);
+			System.arraycopy(old, index, table, slot * SLOT_SIZE, SLOT_SIZE);
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package analytics;
+
+import java.util.Arrays;
+
+/*
+ * Keeps the calls on the heap, column by column, each call is the same index into every array
+ * */
+
+class HeapCallStore implements CallStore {
+	
+	private int size;
+	private int[] callers;
+	private int[] receivers;
+	private int[] starts;
+	private int[] ends;
+	
+	//the number of calls the column arrays start with, they double in size when they fill up
+	private static final int CHUNK_SIZE = 4096;
+	
+	public HeapCallStore() {
+		size = 0;
+		callers = new int[CHUNK_SIZE];
+		receivers = new int[CHUNK_SIZE];
+		starts = new int[CHUNK_SIZE];
+		ends = new int[CHUNK_SIZE];
+	}
+	
+	public void add(int caller, int receiver, int start, int end) {
+		if (size == callers.length) {
+			callers = Arrays.copyOf(callers, size * 2);
+			receivers = Arrays.copyOf(receivers, size * 2);
+			starts = Arrays.copyOf(starts, size * 2);
+			ends = Arrays.copyOf(ends, size * 2);
+		}
+		
+		callers[size] = caller;
+		receivers[size] = receiver;
+		starts[size] = start;
+		ends[size] = end;
+		size++;
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	public void clear() {
+		size = 0;
+	}
+	
+	public void close() {
+		//everything is on the heap, the arrays go when the store does
+		size = 0;
+	}
+	
+	public int getCaller(int call) {
+		return callers[call];
+	}
+	
+	public int getReceiver(int call) {
+		return receivers[call];
+	}
+	
+	public int getStart(int call) {
+		return starts[call];
+	}
+	
+	public int getEnd(int call) {
+		return ends[call];
+	}
+}
@@ -1,18 +1,213 @@
 package analytics;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 
 import excel.ExcelReader;
 
 public class MissionOrganization {
 	
-	//this Map of Maps will contain all the areas in the mission
-	//the key is the area's phone number, and the value is a Map of the area's data
-	private Map<String, Map<String, String>> mission;
+	//companionship type codes
+	public static final int ELDERS = 0;
+	public static final int SISTERS = 1;
+	public static final int DISTRICT_LEADERS = 2;
+	public static final int ZONE_LEADERS = 3;
+	public static final int SPECIAL = 4;
+	public static final int OTHER = 5;
 	
-	MissionOrganization(String filePath) throws IOException {
-		mission = ExcelReader.getMissionOrganization(filePath);
+	//the companionship type names used in the mission organization file, indexed by type code
+	private static final String[] TYPE_NAMES = {"E", "S", "DL", "ZL", "SP"};
+	
+	//the directory the phone numbers were looked up in, phone ids passed to this class come from it
+	private PhoneDirectory phones;
+	
+	//each area in the mission gets a small id, indexed by the id of the area's phone number
+	//(-1 for numbers that aren't missionary numbers)
+	private int[] areaIds;
+	
+	//the data for each area, indexed by area id
+	private int[] zones;//the zone id of each area
+	private byte[] types;//the companionship type code of each area
+	private String[] typeNames;//the companionship type as written in the file
+	private String[] areaStrings;//basic information about the companionship for the results
+	private String[] areaPhones;//the phone number of each area
+	
+	//the name of each zone, indexed by zone id
+	private String[] zoneNames;
+	
+	//the areas that are special numbers and zone leaders
+	private BitSet special;
+	private BitSet zoneLeaders;
+	
+	//changes whenever anything in the organization file changes, saved analysis is only reused if it matches
+	private int checksum;
+	
+	/*
+	 * Constructor, reads the mission organization file
+	 * PARAMETER: String filePath - the location of the mission organization file
+	 * PARAMETER: PhoneDirectory phones - the directory the phone numbers are looked up in
+	 * */
+	public MissionOrganization(String filePath, PhoneDirectory phones) throws IOException {
+		this.phones = phones;
+		Map<String, Map<String, String>> mission = ExcelReader.getMissionOrganization(filePath, phones);
+		
+		int areaCount = mission.size();
+		zones = new int[areaCount];
+		types = new byte[areaCount];
+		typeNames = new String[areaCount];
+		areaStrings = new String[areaCount];
+		areaPhones = new String[areaCount];
+		special = new BitSet(areaCount);
+		zoneLeaders = new BitSet(areaCount);
+		
+		//every phone id handed out so far is covered, numbers added to the directory later aren't missionary numbers
+		areaIds = new int[phones.size()];
+		Arrays.fill(areaIds, -1);
+		
+		//give each zone an id the first time it is seen
+		Map<String, Integer> zoneIds = new HashMap<String, Integer>();
+		
+		//compile the areas into the arrays
+		Iterator<String> phoneNumbers = mission.keySet().iterator();
+		int id = 0;
+		checksum = 0;
+		while (phoneNumbers.hasNext()) {
+			String phone = phoneNumbers.next();
+			Map<String, String> area = mission.get(phone);
+			
+			Integer zone = zoneIds.get(area.get("zone"));
+			if (zone == null) {
+				zone = zoneIds.size();
+				zoneIds.put(area.get("zone"), zone);
+			}
+			
+			areaIds[phones.findId(phone)] = id;
+			zones[id] = zone;
+			areaPhones[id] = phone;
+			typeNames[id] = area.get("type");
+			types[id] = (byte) getTypeCode(area.get("type"));
+			areaStrings[id] = area.get("area") + ": " + area.get("missionaries");
+			if (types[id] == SPECIAL)
+				special.set(id);
+			if (types[id] == ZONE_LEADERS)
+				zoneLeaders.set(id);
+			
+			//the areas come out in no particular order, so they are added up rather than combined in order
+			checksum += (phone + "\t" + area.get("zone") + "\t" + areaStrings[id] + "\t" + typeNames[id]).hashCode();
+			id++;
+		}
+		
+		//number the zones in order of their names, so results listed by zone come out in that order
+		zoneNames = zoneIds.keySet().toArray(new String[zoneIds.size()]);
+		Arrays.sort(zoneNames);
+		int[] sortedIds = new int[zoneNames.length];
+		for (int zone = 0; zone < zoneNames.length; zone++)
+			sortedIds[zoneIds.get(zoneNames[zone])] = zone;
+		for (int area = 0; area < areaCount; area++)
+			zones[area] = sortedIds[zones[area]];
+	}
+	
+	/*
+	 * Returns the number of areas in the mission
+	 * */
+	public int getAreaCount() {
+		return zones.length;
+	}
+	
+	/*
+	 * Returns the number of zones in the mission, zone ids go from 0 to one less than this
+	 * */
+	public int getZoneCount() {
+		return zoneNames.length;
+	}
+	
+	/*
+	 * Returns the zone an area is in
+	 * PARAMETER: int area - the id of the area
+	 * RETURN VALUE: int - the zone id
+	 * */
+	public int getZone(int area) {
+		return zones[area];
+	}
+	
+	/*
+	 * Returns the name of a zone, as it's written in the mission organization file
+	 * PARAMETER: int zone - the zone id
+	 * RETURN VALUE: String - the zone's name
+	 * */
+	public String getZoneName(int zone) {
+		return zoneNames[zone];
+	}
+	
+	/*
+	 * Returns a String representing an area
+	 * PARAMETER: int area - the id of the area
+	 * RETURN VALUE: String - a String with basic information about the companionship, the same as getAreaString()
+	 * */
+	public String getAreaName(int area) {
+		return areaStrings[area];
+	}
+	
+	/*
+	 * Returns the companionship type code of an area
+	 * PARAMETER: int area - the id of the area
+	 * RETURN VALUE: int - the type code (ELDERS, SISTERS, DISTRICT_LEADERS, ZONE_LEADERS, SPECIAL or OTHER)
+	 * */
+	public int getAreaType(int area) {
+		return types[area];
+	}
+	
+	/*
+	 * Returns the phone number of an area
+	 * PARAMETER: int area - the id of the area
+	 * RETURN VALUE: String - the phone number, as it's written in the mission organization file
+	 * */
+	public String getAreaPhone(int area) {
+		return areaPhones[area];
+	}
+	
+	/*
+	 * Returns a checksum of the whole organization, it changes if any area, zone, phone number or type changes
+	 * */
+	public int getChecksum() {
+		return checksum;
+	}
+	
+	/*
+	 * Turns the companionship type from the file into a type code
+	 * PARAMETER: String type - the companionship type
+	 * RETURN VALUE: int - the type code, OTHER if it isn't a known type
+	 * */
+	public static int getTypeCode(String type) {
+		for (int code = 0; code < TYPE_NAMES.length; code++) {
+			if (TYPE_NAMES[code].equals(type))
+				return code;
+		}
+		return OTHER;
+	}
+	
+	/*
+	 * Returns the id of the area a phone number belongs to
+	 * PARAMETER: int phone - the id of the phone number in the phone directory
+	 * RETURN VALUE: int - the area id, or -1 if it isn't a missionary number
+	 * */
+	public int getAreaId(int phone) {
+		if (phone < 0 || phone >= areaIds.length)
+			return -1;
+		return areaIds[phone];
+	}
+	
+	/*
+	 * Returns the id of the area a phone number belongs to
+	 * PARAMETER: String phone - the phone number
+	 * RETURN VALUE: int - the area id, or -1 if it isn't a missionary number
+	 * */
+	private int getAreaId(String phone) {
+		return getAreaId(phones.findId(phone));
 	}
 	
 	/*
@@ -24,14 +219,24 @@ public class MissionOrganization {
 	 * THROWS: IllegalArgumentException if a non missionary number is passed in
 	 * */
 	public boolean isSameZone(String phone1, String phone2) {
-		if (!mission.containsKey(phone1) || !mission.containsKey(phone2)) {
+		return isSameZone(phones.findId(phone1), phones.findId(phone2));
+	}
+	
+	/*
+	 * Determines whether or not the two phone numbers passed in belong to the same Zone.
+	 * PARAMETER: int phone1 - the id of the first phone number
+	 * PARAMETER: int phone2 - the id of the second phone number
+	 * RETURN VALUE: boolean - true = same zone, false = not same zone
+	 * THROWS: IllegalArgumentException if a non missionary number is passed in
+	 * */
+	public boolean isSameZone(int phone1, int phone2) {
+		int area1 = getAreaId(phone1);
+		int area2 = getAreaId(phone2);
+		if (area1 < 0 || area2 < 0) {
 			throw new IllegalArgumentException("One of the phone numbers passed into isSameZone is not a missionary number.");
 		}
 		
-		String zone1 = mission.get(phone1).get("zone");
-		String zone2 = mission.get(phone2).get("zone");
-		
-		return zone1.equals(zone2);
+		return zones[area1] == zones[area2];
 	}
 	
 	/*
@@ -40,7 +245,16 @@ public class MissionOrganization {
 	 * RETURN VALUE: boolean - true = missionary number, false = not missionary number
 	 * */
 	public boolean isMissionaryNumber(String phone) {
-		return mission.containsKey(phone);
+		return getAreaId(phone) >= 0;
+	}
+	
+	/*
+	 * Determines whether or not the phone number passed in is a missionary phone number
+	 * PARAMETER: int phone - the id of the phone number to test
+	 * RETURN VALUE: boolean - true = missionary number, false = not missionary number
+	 * */
+	public boolean isMissionaryNumber(int phone) {
+		return getAreaId(phone) >= 0;
 	}
 	
 	/*
@@ -49,10 +263,17 @@ public class MissionOrganization {
 	 * RETURN VALUE: boolean - true = is zone leader, false = not zone leader
 	 * */
 	public boolean isZoneLeader(String phone) {
-		if (!isMissionaryNumber(phone))
-			return false;
-		
-		return mission.get(phone).get("type").equals("ZL");
+		return isZoneLeader(phones.findId(phone));
+	}
+	
+	/*
+	 * Determines whether or not the phone number passed in is a zone leader phone number
+	 * PARAMETER: int phone - the id of the phone number to test
+	 * RETURN VALUE: boolean - true = is zone leader, false = not zone leader
+	 * */
+	public boolean isZoneLeader(int phone) {
+		int area = getAreaId(phone);
+		return area >= 0 && zoneLeaders.get(area);
 	}
 	
 	/*
@@ -61,10 +282,28 @@ public class MissionOrganization {
 	 * RETURN VALUE: boolean - true = is special number, false = not special number
 	 * */
 	public boolean isSpecialNumber(String phone) {
-		if (!isMissionaryNumber(phone))
-			return false;
-		
-		return mission.get(phone).get("type").equals("SP");
+		return isSpecialNumber(phones.findId(phone));
+	}
+	
+	/*
+	 * Determines whether or not the phone number passed in is a special phone number
+	 * PARAMETER: int phone - the id of the phone number to test
+	 * RETURN VALUE: boolean - true = is special number, false = not special number
+	 * */
+	public boolean isSpecialNumber(int phone) {
+		int area = getAreaId(phone);
+		return area >= 0 && special.get(area);
+	}
+	
+	/*
+	 * Determines whether the phone number passed in belongs to one of a set of companionship types
+	 * PARAMETER: int phone - the id of the phone number to test
+	 * PARAMETER: int typeMask - the type codes, bit (1 << type) is set for each type
+	 * RETURN VALUE: boolean - true = a missionary number of one of the types, false = isn't
+	 * */
+	public boolean isType(int phone, int typeMask) {
+		int area = getAreaId(phone);
+		return area >= 0 && ((1 << types[area]) & typeMask) != 0;
 	}
 	
 	/*
@@ -75,9 +314,23 @@ public class MissionOrganization {
 	 * THROWS: IllegalArgumentException if a non missionary number is passed in
 	 * */
 	public String getCompanionshipType(String phone) {
-		if (!mission.containsKey(phone)) 
+		int area = getAreaId(phone);
+		if (area < 0) 
 			throw new IllegalArgumentException("The number passed into getCompanionshipType is not a missionary number: " + phone);
-		return mission.get(phone).get("type");
+		return typeNames[area];
+	}
+	
+	/*
+	 * Returns the companionship type code of the companionship associated with the phone number
+	 * PARAMETER: int phone - the id of the phone number of the companionship
+	 * RETURN VALUE: int - the type code (ELDERS, SISTERS, DISTRICT_LEADERS, ZONE_LEADERS, SPECIAL or OTHER)
+	 * THROWS: IllegalArgumentException if a non missionary number is passed in
+	 * */
+	public int getCompanionshipType(int phone) {
+		int area = getAreaId(phone);
+		if (area < 0) 
+			throw new IllegalArgumentException("The number passed into getCompanionshipType is not a missionary number: " + phones.getPhone(phone));
+		return types[area];
 	}
 	
 	/*
@@ -87,11 +340,25 @@ public class MissionOrganization {
 	 * THROWS: IllegalArgumentException if a non missionary number is passed in
 	 * */
 	public String getAreaString(String phone) {
-		if (!mission.containsKey(phone))
+		int area = getAreaId(phone);
+		if (area < 0)
 			throw new IllegalArgumentException("The number passed into getAreaString is not a missionary number: " + phone);
 		
-		Map<String, String> area = mission.get(phone);
-		return area.get("area") + ": " + area.get("missionaries");
+		return areaStrings[area];
+	}
+	
+	/*
+	 * Returns a String representing the area
+	 * PARAMETER: int phone - the id of the phone number of the companionship
+	 * RETURN VALUE: String - a String with basic information about the companionship
+	 * THROWS: IllegalArgumentException if a non missionary number is passed in
+	 * */
+	public String getAreaString(int phone) {
+		int area = getAreaId(phone);
+		if (area < 0)
+			throw new IllegalArgumentException("The number passed into getAreaString is not a missionary number: " + phones.getPhone(phone));
+		
+		return areaStrings[area];
 	}
 
 }
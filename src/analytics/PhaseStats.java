@@ -0,0 +1,91 @@
+package analytics;
+
+/*
+ * The time, rows and memory used by one phase of the analysis (loading, checking, writing) or by one rule,
+ * added up over every time it has run. It can be updated from several threads at once.
+ * */
+
+public class PhaseStats implements PhaseStatsMBean {
+	
+	private String kind;
+	private String name;
+	
+	private long runs;
+	private long totalNanos;
+	private long lastNanos;
+	private long items;
+	private long allocatedBytes;//-1 once any part couldn't be counted
+	
+	/*
+	 * Constructor
+	 * PARAMETER: String kind - what is measured, "Phase" or "Rule"
+	 * PARAMETER: String name - the name of the phase or rule
+	 * */
+	PhaseStats(String kind, String name) {
+		this.kind = kind;
+		this.name = name;
+		runs = 0;
+		totalNanos = 0;
+		lastNanos = 0;
+		items = 0;
+		allocatedBytes = 0;
+	}
+	
+	/*
+	 * Adds part of a run, like a range of calls checked on one thread
+	 * PARAMETER: long nanos - the time it took, in nanoseconds
+	 * PARAMETER: long bytes - the memory it allocated, -1 if it couldn't be counted
+	 * PARAMETER: long count - the rows it handled
+	 * */
+	public synchronized void add(long nanos, long bytes, long count) {
+		totalNanos += nanos;
+		items += count;
+		if (bytes < 0 || allocatedBytes < 0)
+			allocatedBytes = -1;
+		else
+			allocatedBytes += bytes;
+	}
+	
+	/*
+	 * Counts one more run of the phase
+	 * PARAMETER: long nanos - the time the whole run took, in nanoseconds
+	 * */
+	public synchronized void addRun(long nanos) {
+		runs++;
+		lastNanos = nanos;
+	}
+	
+	public String getKind() {
+		return kind;
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	public synchronized long getRuns() {
+		return runs;
+	}
+	
+	public synchronized double getTotalMillis() {
+		return totalNanos / 1000000.0;
+	}
+	
+	public synchronized double getLastMillis() {
+		return lastNanos / 1000000.0;
+	}
+	
+	public synchronized long getItems() {
+		return items;
+	}
+	
+	public synchronized double getItemsPerSecond() {
+		if (totalNanos == 0)
+			return 0;
+		return items / (totalNanos / 1000000000.0);
+	}
+	
+	public synchronized long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+}
@@ -0,0 +1,48 @@
+package analytics;
+
+/*
+ * What JMX clients, like JConsole, can see of a phase of the analysis or a rule
+ * */
+
+public interface PhaseStatsMBean {
+	
+	/*
+	 * Returns what was measured, "Phase" or "Rule"
+	 * */
+	public String getKind();
+	
+	/*
+	 * Returns the name of the phase or rule
+	 * */
+	public String getName();
+	
+	/*
+	 * Returns the number of times the phase has run
+	 * */
+	public long getRuns();
+	
+	/*
+	 * Returns the time spent in the phase over all its runs, in milliseconds
+	 * */
+	public double getTotalMillis();
+	
+	/*
+	 * Returns the time the last run of the phase took, in milliseconds
+	 * */
+	public double getLastMillis();
+	
+	/*
+	 * Returns the number of rows (calls, areas) handled over all the runs
+	 * */
+	public long getItems();
+	
+	/*
+	 * Returns the rows handled per second of time spent in the phase
+	 * */
+	public double getItemsPerSecond();
+	
+	/*
+	 * Returns the memory allocated over all the runs, in bytes, -1 if the JVM can't count it
+	 * */
+	public long getAllocatedBytes();
+}
@@ -1,33 +1,82 @@
 package analytics;
 
+import java.io.File;
 import java.io.IOException;
-import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
 
+import rules.FiveMinuteRule;
+import rules.HomePhoneRule;
+import rules.NightCallRule;
+import rules.NineMinuteRule;
+import rules.OutOfZoneRule;
+import rules.ProselytingHoursRule;
+import rules.RuleEngine;
+import rules.RuleSettings;
+import rules.TotalMinutesRule;
+
+import excel.CallHandler;
 import excel.ExcelWriter;
 
 import gui.AnalyticsFrame;
 
 public class PhoneAnalytics {
 	
-	private MissionOrganization mission;
-	private CallList calls;
-	private AnalyticsFrame gui;
+	//the phone numbers of the mission organization and call list are looked up in the same directory
+	private PhoneDirectory phones;
+	//these can be loaded on different threads at the same time
+	private volatile MissionOrganization mission;
+	private volatile CallList calls;
+	private volatile RuleSettings ruleSettings;//the times, limits and exemptions the rules check against
+	private AnalyticsFrame gui;//null when running from the command line
+	private int callStorage;//where the calls are kept, see CallList
+	private File stateDirectory;//where the analysis of each month is saved, null = always check every call
+	private AnalyticsMetrics metrics;//the time and memory used by each phase and rule
+	private CallQuery query;//the totals and index of the loaded calls, null until they're asked for
+	private File historyFile;//where the results of every month analyzed are kept, null = they aren't kept
+	private ResultsStore history;//the store in the history file, null until it's used
+	
+	//the file the results are written to when running from the GUI
+	public static final String RESULTS_FILE = "results.xlsx";
 	
-	//monthly total limit constants
-	private int ELDER_LIMIT = 1200;
-	private int SISTER_LIMIT = 1600;
-	private int DISTRICT_LIMIT = 1600;
-	private int ZONE_LIMIT = 2000;
+	//exit codes for the command line
+	private static final int EXIT_FAILED = 1;
+	private static final int EXIT_USAGE = 2;
 	
 	public PhoneAnalytics() throws IOException {
+		this(true);
+	}
+	
+	/*
+	 * Constructor
+	 * PARAMETER: boolean showGui - true = open the GUI, false = run without one, errors go to standard error
+	 * */
+	private PhoneAnalytics(boolean showGui) {
+		phones = new PhoneDirectory();
 		mission = null;
 		calls = null;
-		gui = new AnalyticsFrame(this);
+		ruleSettings = new RuleSettings();
+		callStorage = CallList.HEAP;
+		stateDirectory = null;
+		metrics = new AnalyticsMetrics();
+		if (showGui)
+			gui = new AnalyticsFrame(this);
+	}
+	
+	/*
+	 * Shows an error message in the GUI, or prints it when there is no GUI
+	 * PARAMETER: String text - the error message
+	 * */
+	private void setError(String text) {
+		if (gui != null)
+			gui.setError(text);
+		else
+			System.err.println(text);
 	}
 	
 	/*
@@ -36,11 +85,64 @@ public class PhoneAnalytics {
 	 * RETURN VALUE: boolean - true = operation succeeded, false = operation failed
 	 * */
 	public boolean initOrganization(String fileName) {
+		long startNanos = System.nanoTime();
+		long startBytes = AnalyticsMetrics.getAllocatedBytes();
+		try {
+			mission = new MissionOrganization(fileName, phones);
+			metrics.record("Load mission organization", startNanos, startBytes, mission.getAreaCount());
+		}
+		catch (Exception e) {
+			setError("Error: Something went wrong loading the mission organization file:" + fileName +
+					". Make sure you have the right file or check the log file to see the cause of the problem.");
+			e.printStackTrace();
+			return false;
+		}
+		return true;
+	}
+	
+	/*
+	 * Returns the totals of the loaded calls by caller, area, zone and day, and an index of who called whom,
+	 * for answering questions about the calls without running the analysis. They're worked out the first time
+	 * they're asked for after the call list or mission organization is loaded, and kept after that.
+	 * RETURN VALUE: CallQuery - the totals, null if the system hasn't been initialized
+	 * */
+	public synchronized CallQuery getQuery() {
+		MissionOrganization currentMission = mission;
+		CallList currentCalls = calls;
+		if (currentMission == null || currentCalls == null)
+			return null;
+		
+		if (query == null || query.getCalls() != currentCalls || query.getMission() != currentMission) {
+			long startNanos = System.nanoTime();
+			long startBytes = AnalyticsMetrics.getAllocatedBytes();
+			query = new CallQuery(currentCalls, currentMission);
+			metrics.record("Build query index", startNanos, startBytes, query.size());
+		}
+		return query;
+	}
+	
+	/*
+	 * Returns the time, rows and memory used by each phase of loading, analyzing and writing, and by each rule
+	 * */
+	public AnalyticsMetrics getMetrics() {
+		return metrics;
+	}
+	
+	/*
+	 * This method loads the rule settings from the rules file passed in, replacing the mission's default rules
+	 * PARAMETER: String fileName = the rules file to use
+	 * RETURN VALUE: boolean - true = operation succeeded, false = operation failed
+	 * */
+	public boolean initRules(String fileName) {
 		try {
-			mission = new MissionOrganization(fileName);
+			ruleSettings = new RuleSettings(fileName);
+		}
+		catch (IllegalArgumentException e) {
+			setError("Error: " + e.getMessage());
+			return false;
 		}
 		catch (Exception e) {
-			gui.setError("Error: Something went wrong loading the mission organization file:" + fileName +
+			setError("Error: Something went wrong loading the rules file:" + fileName +
 					". Make sure you have the right file or check the log file to see the cause of the problem.");
 			e.printStackTrace();
 			return false;
@@ -49,28 +151,116 @@ public class PhoneAnalytics {
 	}
 	
 	/*
-	 * This method initializes the call list from the file passed in
+	 * Sets where the calls are kept when the call list is loaded. Keeping them off the heap lets very large
+	 * call lists be analyzed with a small heap.
+	 * PARAMETER: int storage - CallList.HEAP, CallList.DIRECT or CallList.MAPPED
+	 * */
+	public void setCallStorage(int storage) {
+		callStorage = storage;
+	}
+	
+	/*
+	 * Turns on incremental analysis. The analysis of each month is saved in the directory, and the next time
+	 * that month is analyzed from a longer export only the calls added since are checked.
+	 * PARAMETER: File directory - where to save the analysis, null = check every call every time
+	 * */
+	public void setStateDirectory(File directory) {
+		stateDirectory = directory;
+	}
+	
+	/*
+	 * Turns on keeping the results of every month analyzed. Each month's results are added to the file when
+	 * they're written, so how a companionship's results change can be looked up later with getHistory().
+	 * PARAMETER: File file - the file to keep the results in, null = don't keep them
+	 * */
+	public synchronized void setHistoryFile(File file) {
+		historyFile = file;
+		history = null;
+	}
+	
+	/*
+	 * Returns the results of every month analyzed so far
+	 * RETURN VALUE: ResultsStore - the results, null if they aren't being kept
+	 * THROWS: IOException if the history file can't be read
+	 * */
+	public synchronized ResultsStore getHistory() throws IOException {
+		if (historyFile != null && history == null)
+			history = new ResultsStore(historyFile);
+		return history;
+	}
+	
+	/*
+	 * This method initializes the call list from the file passed in, the file can hold calls from any number of months
 	 * PARAMETER: String fileName = the file to use
-	 * PARAMETER: String year = the year that the data in the file is from
-	 * PARAMETER: String month - the month that the data in the file is from
 	 * PARAMETER: String transfer - the date of the last transfer
 	 * RETURN VALUE: boolean - true = the operation succeeded, false = operation failed
 	 * */
-	public boolean initCallList(String fileName, String year, String month, String transfer) {
+	public boolean initCallList(String fileName, String transfer) {
+		return initCallList(fileName, transfer, null);
+	}
+	
+	/*
+	 * This method initializes the call list from the file passed in, the file can hold calls from any number of months
+	 * PARAMETER: String fileName = the file to use
+	 * PARAMETER: String transfer - the date of the last transfer
+	 * PARAMETER: ProgressListener progress - told how many calls have been read and can cancel the load, can be null
+	 * RETURN VALUE: boolean - true = the operation succeeded, false = operation failed
+	 * */
+	public boolean initCallList(String fileName, String transfer, ProgressListener progress) {
+		List<String> fileNames = new ArrayList<String>(1);
+		fileNames.add(fileName);
+		return initCallList(fileNames, transfer, progress);
+	}
+	
+	/*
+	 * This method initializes the call list from several files at once, such as the exports a month was split
+	 * into. The files are read at the same time and a call that's in more than one of them is only counted once.
+	 * PARAMETER: List<String> fileNames = the files to use
+	 * PARAMETER: String transfer - the date of the last transfer
+	 * PARAMETER: ProgressListener progress - told how many calls have been read and can cancel the load, can be null
+	 * RETURN VALUE: boolean - true = the operation succeeded, false = operation failed
+	 * */
+	public boolean initCallList(List<String> fileNames, String transfer, ProgressListener progress) {
+		String fileName = fileNames.size() == 1 ? fileNames.get(0) : fileNames.toString();
+		long startNanos = System.nanoTime();
+		long startBytes = AnalyticsMetrics.getAllocatedBytes();
+		CallList list = null;
 		try {
-			calls = new CallList(fileName, year, month, transfer);
+			list = new CallList(phones, transfer, callStorage);
+			list.load(fileNames, progress);
+			
+			//the list being replaced can let go of its calls' files
+			if (calls != null)
+				calls.close();
+			calls = list;
+			list = null;
+			metrics.record("Load call list", startNanos, startBytes, calls.size());
+		}
+		catch (CancellationException e) {
+			setError("Loading the call list was cancelled.");
+			return false;
 		}
 		catch(IOException e) {
-			gui.setError("Error: Something went wrong loading the call list file:" + fileName +
+			setError("Error: Something went wrong loading the call list file:" + fileName +
 					". Make sure you have the right file or check the log file to see the cause of the problem.");
 			e.printStackTrace();
 			return false;
 		}
+		catch (IllegalArgumentException e) {
+			setError("Error: " + e.getMessage() + ". Make sure the call list file is the right one: " + fileName);
+			e.printStackTrace();
+			return false;
+		}
 		catch (OutOfMemoryError e) {
-			gui.setError("Error: Ran out of memory trying to load the call list.");
+			setError("Error: Ran out of memory trying to load the call list.");
 			e.printStackTrace();
 			return false;
 		}
+		finally {
+			//a list that didn't finish loading is never used
+			if (list != null)
+				list.close();
+		}
 		return true;
 	}
 	
@@ -79,344 +269,665 @@ public class PhoneAnalytics {
 	 * RETURN VALUE: boolean - true = operation succeeded, false = operation failed
 	 * */
 	public boolean runAnalysis() {
-		if (mission == null || calls == null) {
-			gui.setError("Please initialize the system first.");
+		return runAnalysis(RESULTS_FILE);
+	}
+	
+	/*
+	 * This method does all the phone analysis and will write to an Excel file
+	 * PARAMETER: ProgressListener progress - told how many calls have been checked and can cancel the analysis, can be null
+	 * RETURN VALUE: boolean - true = operation succeeded, false = operation failed
+	 * */
+	public boolean runAnalysis(ProgressListener progress) {
+		return runAnalysis(RESULTS_FILE, progress);
+	}
+	
+	/*
+	 * This method does all the phone analysis and will write to an Excel file
+	 * PARAMETER: String fileName - the .xlsx file to write the results to
+	 * RETURN VALUE: boolean - true = operation succeeded, false = operation failed
+	 * */
+	public boolean runAnalysis(String fileName) {
+		return runAnalysis(fileName, null);
+	}
+	
+	/*
+	 * This method does all the phone analysis and will write to an Excel file
+	 * PARAMETER: String fileName - the .xlsx file to write the results to
+	 * PARAMETER: ProgressListener progress - told how many calls have been checked and can cancel the analysis, can be null
+	 * RETURN VALUE: boolean - true = operation succeeded, false = operation failed
+	 * */
+	public boolean runAnalysis(String fileName, ProgressListener progress) {
+		return runAnalysis(fileName, null, null, progress);
+	}
+	
+	/*
+	 * This method does the phone analysis of a range of months and will write to an Excel file, with a sheet
+	 * for each month
+	 * PARAMETER: String fileName - the .xlsx file to write the results to
+	 * PARAMETER: String firstMonth - the first month to analyze (yyyy/mm), null = start from the oldest month
+	 * PARAMETER: String lastMonth - the last month to analyze (yyyy/mm), null = go up to the newest month
+	 * PARAMETER: ProgressListener progress - told how many calls have been checked and can cancel the analysis, can be null
+	 * RETURN VALUE: boolean - true = operation succeeded, false = operation failed
+	 * */
+	public boolean runAnalysis(String fileName, String firstMonth, String lastMonth, ProgressListener progress) {
+		List<RuleEngine> engines = analyze(firstMonth, lastMonth, progress);
+		if (engines == null)
 			return false;
+		return writeResults(engines, fileName);
+	}
+	
+	/*
+	 * Checks the calls of a range of months against all the rules, each month on its own
+	 * PARAMETER: String firstMonth - the first month to analyze (yyyy/mm), null = start from the oldest month
+	 * PARAMETER: String lastMonth - the last month to analyze (yyyy/mm), null = go up to the newest month
+	 * PARAMETER: ProgressListener progress - told how many calls have been checked and can cancel the analysis, can be null
+	 * RETURN VALUE: List<RuleEngine> - an engine holding the results of each month, null if the analysis failed
+	 * */
+	private List<RuleEngine> analyze(String firstMonth, String lastMonth, ProgressListener progress) {
+		if (mission == null || calls == null) {
+			setError("Please initialize the system first.");
+			return null;
 		}
-		ExcelWriter writer = new ExcelWriter();
 		
-		//create the header array for writing headers for maps to the Excel file
-		String[] mapHeader = new String[2];
-		mapHeader[0] = "Missionaries";
-		mapHeader[1] = "# of Violations";
+		List<CallPartition> months;
+		try {
+			months = getMonths(firstMonth, lastMonth);
+		}
+		catch (IllegalArgumentException e) {
+			setError("Error: " + e.getMessage());
+			return null;
+		}
+		if (months.isEmpty()) {
+			setError("There are no calls in the months to analyze.");
+			return null;
+		}
 		
-		//create the header array for writing headers for lists to the Excel file
-		String[] listHeader = new String[3];
-		listHeader[0] = "Caller";
-		listHeader[1] = "Receiver";
-		listHeader[2] = "Date (mm/yy)";
+		if (stateDirectory != null)
+			stateDirectory.mkdirs();
 		
-		//check for calls during proselyting hours
-		writer.addTitle("Calls to Other Missionaries during Proselyting Hours");
-		writer.addHeader(mapHeader);
-		writer.addMap(checkProselytingHours());
+		long startNanos = System.nanoTime();
+		long startBytes = AnalyticsMetrics.getAllocatedBytes();
+		List<RuleEngine> engines = new ArrayList<RuleEngine>(months.size());
+		long checked = 0;//the number of calls checked in the earlier months
+		for (int i = 0; i < months.size(); i++) {
+			CallPartition month = months.get(i);
+			
+			//pick up where the last analysis of the month left off, if it was saved
+			RuleEngine engine = createEngine(month);
+			File stateFile = null;
+			if (stateDirectory != null) {
+				stateFile = new File(stateDirectory, month.getYear() + "-" + month.getMonth() + ".state");
+				if (!engine.load(stateFile, mission.getChecksum()))
+					engine = createEngine(month);
+			}
+			int alreadyChecked = engine.getChecked();
+			
+			//check all the rules in one pass over the new calls of the month, split up across the available cores
+			try {
+				engine.runParallel(progress == null ? null : new OffsetProgress(progress, checked));
+			}
+			catch (CancellationException e) {
+				setError("The analysis was cancelled.");
+				return null;
+			}
+			catch (IllegalArgumentException e) {
+				setError(e.getMessage());
+				return null;
+			}
+			
+			//not being able to save only means the next run has to check every call again
+			if (stateFile != null && !engine.save(stateFile, mission.getChecksum()))
+				setError("Error: Couldn't save the analysis to " + stateFile.getPath() + ".");
+			checked += month.size() - alreadyChecked;
+			engines.add(engine);
+		}
+		metrics.record("Analyze", startNanos, startBytes, checked);
+		return engines;
+	}
+	
+	/*
+	 * Reads, checks and writes the results of call lists that are too big to keep in memory. The calls are
+	 * read on a thread of their own and checked a batch at a time while the rest is still being read, and
+	 * each batch is thrown away once it's checked, so only the batches waiting in the queue and what the
+	 * rules have recorded are ever in memory. The results are the same as loading the call list and running
+	 * the analysis, but nothing is left in the call list afterwards, the analysis can't be saved and every call
+	 * outside of the zone can't be listed.
+	 * PARAMETER: List<String> fileNames - the call list files to read
+	 * PARAMETER: String transfer - the date of the last transfer
+	 * PARAMETER: String firstMonth - the first month to analyze (yyyy/mm), null = start from the oldest month
+	 * PARAMETER: String lastMonth - the last month to analyze (yyyy/mm), null = go up to the newest month
+	 * PARAMETER: String outFile - the .xlsx file to write the results to
+	 * PARAMETER: int queuedBatches - the number of batches of calls that can be read ahead of the analysis
+	 * PARAMETER: ProgressListener progress - told how many calls have been checked and can cancel the analysis, can be null
+	 * RETURN VALUE: boolean - true = operation succeeded, false = operation failed
+	 * */
+	public boolean runPipelined(List<String> fileNames, String transfer, String firstMonth, String lastMonth, String outFile,
+			int queuedBatches, ProgressListener progress) {
+		if (mission == null) {
+			setError("Please initialize the system first.");
+			return false;
+		}
 		
-		//check for night time calls
-		writer.addTitle("Calls Made From 10:30pm to 6:30am");
-		writer.addHeader(mapHeader);
-		writer.addMap(checkNightCalls());
+		//every call outside of the zone is found again from the call list as it's written, which the pipeline doesn't keep
+		if (ruleSettings.isOutOfZoneDetail()) {
+			setError("Error: outOfZone.detail lists every call from the call list, which the pipeline doesn't keep. " +
+					"Turn it off or run without -pipeline.");
+			return false;
+		}
 		
-		//check for five minute calls
-		writer.addTitle("Calls to Investigators over 5 Minutes");
-		writer.addHeader(mapHeader);
+		final int from;
+		final int to;
 		try {
-			writer.addMap(checkFiveMinuteCalls());
+			int[] first = firstMonth == null ? new int[] {0, 1} : parseMonth(firstMonth);
+			int[] last = lastMonth == null ? new int[] {9999, 12} : parseMonth(lastMonth);
+			from = first[0] * 12 + first[1] - 1;
+			to = last[0] * 12 + last[1] - 1;
+			if (to < from)
+				throw new IllegalArgumentException("The last month to analyze is before the first month");
 		}
 		catch (IllegalArgumentException e) {
-			gui.setError(e.getMessage());
+			setError("Error: " + e.getMessage());
+			return false;
+		}
+		
+		String fileName = fileNames.size() == 1 ? fileNames.get(0) : fileNames.toString();
+		long startNanos = System.nanoTime();
+		long startBytes = AnalyticsMetrics.getAllocatedBytes();
+		CallList list = new CallList(phones, transfer, CallList.HEAP);
+		DuplicateFilter duplicates = fileNames.size() > 1 ? new DuplicateFilter() : null;
+		Map<CallPartition, RuleEngine> engines = new HashMap<CallPartition, RuleEngine>();
+		CallPipeline pipeline = new CallPipeline(fileNames, phones, queuedBatches, metrics);
+		long checked = 0;
+		try {
+			pipeline.start();
+			CallPipeline.Batch batch;
+			while ((batch = pipeline.take()) != null) {
+				//only the calls of the months being analyzed go into the list
+				final CallHandler adder = list.createAdder(duplicates, batch.getFile());
+				batch.replay(new CallHandler() {
+					public void handleCall(int caller, int receiver, int year, int month, int start, int end) {
+						int key = year * 12 + month - 1;
+						if (key >= from && key <= to)
+							adder.handleCall(caller, receiver, year, month, start, end);
+					}
+				});
+				pipeline.recycle(batch);
+				
+				//check the batch's calls in each month it had calls for, then make room for the next batch
+				List<CallPartition> months = list.getPartitions();
+				for (int i = 0; i < months.size(); i++) {
+					CallPartition month = months.get(i);
+					if (month.size() == 0)
+						continue;
+					RuleEngine engine = engines.get(month);
+					if (engine == null) {
+						engine = createEngine(month);
+						engines.put(month, engine);
+					}
+					engine.checkBatch();
+					checked += month.size();
+				}
+				list.clear();
+				
+				if (progress != null) {
+					if (progress.isCancelled())
+						throw new CancellationException();
+					progress.progress(checked);
+				}
+			}
+		}
+		catch (CancellationException e) {
+			setError("The analysis was cancelled.");
 			return false;
 		}
-		catch (ParseException e) {
-			gui.setError("Something went wrong checking the five minute calls:" + e.getMessage());
+		catch (IOException e) {
+			setError("Error: Something went wrong loading the call list file:" + fileName +
+					". Make sure you have the right file or check the log file to see the cause of the problem.");
 			e.printStackTrace();
 			return false;
 		}
-		
-		//check for nine minute calls
-		writer.addTitle("Calls to Missionaries over 9 Minutes");
-		writer.addHeader(mapHeader);
-		try {
-			writer.addMap(checkNineMinuteCalls());
-		} 
-		catch (ParseException e) {
-			gui.setError("Something went wrong checking the nine minute calls:" + e.getMessage());
+		catch (IllegalArgumentException e) {
+			setError("Error: " + e.getMessage() + ". Make sure the call list file is the right one: " + fileName);
 			e.printStackTrace();
 			return false;
 		}
-		
-		//check for calls outside of the zone
-		writer.addTitle("Calls outside of the Zone");
-		writer.addHeader(listHeader);
-		writer.addList(checkOutOfZone());
-		
-		//check for calls to home phones
-		writer.addTitle("Calls to Landlines");
-		writer.addHeader(mapHeader);
-		writer.addMap(checkHomePhones());
-		
-		//check for going over total minutes
-		writer.addTitle("Going Over Monthly Minutes");
-		mapHeader[1] = "Minutes";
-		writer.addHeader(mapHeader);
-		try {
-			writer.addMap(checkTotalMinutes());
-		} 
-		catch (ParseException e) {
-			gui.setError("Something went wrong checking total minutes:" + e.getMessage());
+		catch (OutOfMemoryError e) {
+			setError("Error: Ran out of memory trying to analyze the call list.");
 			e.printStackTrace();
 			return false;
 		}
+		finally {
+			pipeline.close();
+		}
 		
-		//write out the results and return
-		writer.write("results.xls");
-		return true;
+		//the rules can only work out their totals once every month has all its calls
+		List<CallPartition> months = list.getPartitions();
+		if (months.isEmpty()) {
+			setError("There are no calls in the months to analyze.");
+			return false;
+		}
+		List<RuleEngine> results = new ArrayList<RuleEngine>(months.size());
+		for (int i = 0; i < months.size(); i++) {
+			RuleEngine engine = engines.get(months.get(i));
+			engine.finishRules();
+			results.add(engine);
+		}
+		metrics.record("Analyze", startNanos, startBytes, checked);
+		return writeResults(results, outFile);
 	}
 	
 	/*
-	 * Checks for calls between 10:30pm and 6:30 am
-	 * RETURN VALUE: List of Maps containing information about violators
+	 * Sets up the rules for a month of calls
+	 * PARAMETER: CallPartition month - the calls of the month
+	 * RETURN VALUE: RuleEngine - an engine with all the rules, their results will be written in the order they're added
 	 * */
-	private Map<String, Map<String, String>> checkNightCalls() {
-		//create a List to contain the violators
-		Map<String, Map<String, String>> violators = new HashMap<String, Map<String, String>>();
-				
-		//loop through the calls in the call list
-		Iterator<String[]> callList = calls.iterator();
-		while (callList.hasNext()) {
-			String[] call = callList.next();
-			
-			//get the start and end times for the call
-			String start = call[CallList.START].substring(3, 8);
-			String end = call[CallList.END].substring(3, 8);
-			
-			//check that the start time wasn't too early or the end time wasn't too late and that the caller wasn't a special number
-			if ((start.compareTo("06:30") < 0 || end.compareTo("22:30") > 0) && !mission.isSpecialNumber(call[CallList.CALLER])) {
-				//only add a new Map if there isn't already one for the companionship
-				if (!violators.containsKey(call[CallList.CALLER])) {
-					Map<String, String> violator = new HashMap<String, String>();
-					violator.put("missionaries", mission.getAreaString(call[CallList.CALLER]));
-					violator.put("count", "1");
-					violators.put(call[CallList.CALLER], violator);
-				}
-				else {
-					Map<String, String> violator = violators.get(call[CallList.CALLER]);
-					int count = Integer.parseInt(violator.get("count")) + 1;
-					violator.put("count", count + "");
-				}
-			}
-		}
-		
-		return violators;
+	private RuleEngine createEngine(CallPartition month) {
+		RuleEngine engine = new RuleEngine(month);
+		engine.setMetrics(metrics);
+		RuleSettings settings = ruleSettings;
+		engine.addRule(new ProselytingHoursRule(mission, month, settings));
+		engine.addRule(new NightCallRule(mission, month, settings));
+		engine.addRule(new FiveMinuteRule(mission, month, settings));
+		engine.addRule(new NineMinuteRule(mission, month, settings));
+		engine.addRule(new OutOfZoneRule(mission, month, settings));
+		engine.addRule(new HomePhoneRule(mission, month, settings));
+		engine.addRule(new TotalMinutesRule(mission, month, settings));
+		return engine;
 	}
 	
 	/*
-	 * Checks for calls to missionaries other than the zone leaders between 10:30am and 9:00pm
-	 * Leaves out weekly planning session
+	 * Gets the months of calls in a range
+	 * PARAMETER: String firstMonth - the first month (yyyy/mm), null = start from the oldest month
+	 * PARAMETER: String lastMonth - the last month (yyyy/mm), null = go up to the newest month
+	 * RETURN VALUE: List<CallPartition> - the months in the range that have calls, oldest first
+	 * THROWS: IllegalArgumentException if a month isn't in yyyy/mm format or the range is backwards
 	 * */
-	private Map<String, Map<String, String>> checkProselytingHours() {
-		Map<String, Map<String, String>> violators = new HashMap<String, Map<String, String>>();
+	private List<CallPartition> getMonths(String firstMonth, String lastMonth) {
+		if (firstMonth == null && lastMonth == null)
+			return calls.getPartitions();
 		
-		//iterate over all the calls, looking for violations
-		Iterator<String[]> callList = calls.iterator();
-		while (callList.hasNext()) {
-			String[] call = callList.next();
-			
-			//get the start and end times for the call
-			String start = call[CallList.START].substring(3, 8);
-			String end = call[CallList.END].substring(3, 8);
-			
-			//go through all the conditions of being a violator
-			if (mission.isMissionaryNumber(call[CallList.RECEIVER]) && //called a missionary 
-					!mission.isSpecialNumber(call[CallList.CALLER]) && //not a special number
-					!mission.isSpecialNumber(call[CallList.RECEIVER]) && //didn't call special number
-					//not calling the zone leader or the zone leader calling them
-					!(mission.isSameZone(call[CallList.CALLER], call[CallList.RECEIVER]) 
-							&& (mission.isZoneLeader(call[CallList.CALLER]) || mission.isZoneLeader(call[CallList.RECEIVER]))) &&
-					(start.compareTo("10:30") > 0 || end.compareTo("21:00") < 0) &&//calling during proselyting hours
-					!calls.duringPlanningSession(call[CallList.START], call[CallList.END])) { //exclude planning session
-				
-				//only add a new Map if there isn't already one for the companionship
-				if (!violators.containsKey(call[CallList.CALLER])) {
-					Map<String, String> violator = new HashMap<String, String>();
-					violator.put("missionaries", mission.getAreaString(call[CallList.CALLER]));
-					violator.put("count", "1");
-					violators.put(call[CallList.CALLER], violator);
-				}
-				else {
-					Map<String, String> violator = violators.get(call[CallList.CALLER]);
-					int count = Integer.parseInt(violator.get("count")) + 1;
-					violator.put("count", count + "");
-				}
+		int[] from = firstMonth == null ? new int[] {0, 1} : parseMonth(firstMonth);
+		int[] to = lastMonth == null ? new int[] {9999, 12} : parseMonth(lastMonth);
+		return calls.getPartitions(from[0], from[1], to[0], to[1]);
+	}
+	
+	/*
+	 * Reads a month typed in by the user
+	 * PARAMETER: String text - the month (yyyy/mm)
+	 * RETURN VALUE: int[] - the year and then the month (1 - 12)
+	 * THROWS: IllegalArgumentException if the month isn't in yyyy/mm format
+	 * */
+	private static int[] parseMonth(String text) {
+		try {
+			if (text.length() == 7 && text.charAt(4) == '/') {
+				int year = Integer.parseInt(text.substring(0, 4));
+				int month = Integer.parseInt(text.substring(5, 7));
+				if (month >= 1 && month <= 12)
+					return new int[] {year, month};
 			}
-				
 		}
-		return violators;
+		catch (NumberFormatException e) {
+		}
+		throw new IllegalArgumentException("The month " + text + " must be in yyyy/mm format");
 	}
 	
-	
 	/*
-	 * Checks for calls to investigators that are longer than 5 minutes
-	 * RETURN VALUE: Map of Maps containing information about violators
+	 * Writes the results of the analysis to an Excel file, each month's results go on their own sheet,
+	 * followed by a sheet of the time and memory used by each phase and rule
+	 * PARAMETER: List<RuleEngine> engines - the engines holding the results of each month
+	 * PARAMETER: String fileName - the .xlsx file to write the results to
+	 * RETURN VALUE: boolean - true = operation succeeded, false = the results couldn't be written, or were written
+	 * 	but couldn't be added to the history file
 	 * */
-	private Map<String, Map<String, String>> checkFiveMinuteCalls() throws ParseException {
-		//create a Map to contain the violators
-		Map<String, Map<String, String>> violators = new HashMap<String, Map<String, String>>();
+	private boolean writeResults(List<RuleEngine> engines, String fileName) {
+		long startNanos = System.nanoTime();
+		long startBytes = AnalyticsMetrics.getAllocatedBytes();
+		long written = 0;//the calls checked in the months written
 		
-		//get the list of calls over 5 minutes
-		Iterator<String[]> callList = calls.getOverFiveMinutes();
-		while (callList.hasNext()) {
-			String[] call = callList.next();
-			//if it's a missionary number, they have up to 9 minutes and if the caller or receiver is a special number, no limit
-			if (!mission.isMissionaryNumber(call[CallList.RECEIVER]) && !(mission.isSpecialNumber(call[CallList.CALLER]) || mission.isSpecialNumber(call[CallList.RECEIVER]))) {
-				//only add a new Map if there isn't already one for the companionship
-				if (!violators.containsKey(call[CallList.CALLER])) {
-					Map<String, String> violator = new HashMap<String, String>();
-					violator.put("missionaries", mission.getAreaString(call[CallList.CALLER]));
-					violator.put("count", "1");
-					violators.put(call[CallList.CALLER], violator);
-				}
-				else {
-					Map<String, String> violator = violators.get(call[CallList.CALLER]);
-					int count = Integer.parseInt(violator.get("count")) + 1;
-					violator.put("count", count + "");
-				}
+		//the area names are looked up as the results are written, so that can fail on unknown numbers too
+		ExcelWriter writer = new ExcelWriter(true);
+		try {
+			for (int i = 0; i < engines.size(); i++) {
+				CallPartition month = engines.get(i).getCalls();
+				writer.addSheet(month.getYear() + "-" + month.getMonth());
+				engines.get(i).write(writer);
+				written += engines.get(i).getChecked();
+			}
+			
+			//the workbook is still being written, so its own write isn't in the sheet
+			writer.addSheet("Metrics");
+			writeMetrics(writer);
+			
+			if (!writer.write(fileName)) {
+				setError("Error: Something went wrong writing the results to " + fileName + ".");
+				return false;
 			}
 		}
-		return violators;
+		catch (IllegalArgumentException e) {
+			setError(e.getMessage());
+			return false;
+		}
+		finally {
+			//a run that stops part way through still cleans up the rows flushed to disk
+			writer.dispose();
+		}
+		metrics.record("Write results", startNanos, startBytes, written);
+		
+		//the results just written are kept, but the run still failed if they couldn't be added to the history
+		if (historyFile != null && !storeResults(engines)) {
+			setError("Error: The results were written to " + fileName + ", but couldn't be added to " + historyFile.getPath() + ".");
+			return false;
+		}
+		return true;
 	}
 	
 	/*
-	 * Checks for calls to other missionaries that are over 9 minutes
-	 * RETURN VALUE: Map of Maps containing information about violators
+	 * Adds the results of each month to the history file
+	 * PARAMETER: List<RuleEngine> engines - the engines holding the results of each month
+	 * RETURN VALUE: boolean - true = operation succeeded, false = operation failed
 	 * */
-	private Map<String, Map<String, String>> checkNineMinuteCalls() throws ParseException {
-		//create a List to contain the violators
-		Map<String, Map<String, String>> violators = new HashMap<String, Map<String, String>>();
-
-		//get the list of calls over 9 minutes
-		Iterator<String[]> callList = calls.getOverNineMinutes();
-		while (callList.hasNext()) {
-			String[] call = callList.next();
-			//make sure the caller or receiver is not a special number or a non missionary (which is caught in over 5 minutes)
-			if (mission.isMissionaryNumber(call[CallList.RECEIVER]) && !(mission.isSpecialNumber(call[CallList.CALLER]) || mission.isSpecialNumber(call[CallList.RECEIVER]))) {
-				//only add a new Map if there isn't already one for the companionship
-				if (!violators.containsKey(call[CallList.CALLER])) {
-					Map<String, String> violator = new HashMap<String, String>();
-					violator.put("missionaries", mission.getAreaString(call[CallList.CALLER]));
-					violator.put("count", "1");
-					violators.put(call[CallList.CALLER], violator);
-				}
-				//if the number's already in there, just add one to the counter on the companionship
-				else {
-					Map<String, String> violator = violators.get(call[CallList.CALLER]);
-					int count = Integer.parseInt(violator.get("count")) + 1;
-					violator.put("count", count + "");
-				}
+	private boolean storeResults(List<RuleEngine> engines) {
+		long startNanos = System.nanoTime();
+		long startBytes = AnalyticsMetrics.getAllocatedBytes();
+		try {
+			ResultsStore store = getHistory();
+			for (int i = 0; i < engines.size(); i++) {
+				CallPartition month = engines.get(i).getCalls();
+				ResultsStore.Month results = new ResultsStore.Month(month.getYear(), month.getMonthNumber());
+				engines.get(i).addResults(results);
+				store.append(results);
 			}
 		}
-		return violators;
+		catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+		metrics.record("Store results", startNanos, startBytes, engines.size());
+		return true;
 	}
 	
 	/*
-	 * Check for calls where missionaries call missionaries outside of their zone
-	 * RETURN VALUE: List of Maps containing information about violations
+	 * Writes the time, rows and memory used by each phase and rule so far
+	 * PARAMETER: ExcelWriter writer - the writer to add the rows to
 	 * */
-	private List<Map<String, String>> checkOutOfZone() {
-		List<Map<String, String>> violators = new ArrayList<Map<String, String>>();
-		
-		//loop through all the phone calls looking for calls outside of the zone
-		Iterator<String[]> callList = calls.iterator();
-		while (callList.hasNext()) {
-			String[] call = callList.next();
-			
-			//only do the check if the receiver is a missionary or the caller or receiver wasn't special number
-			if (mission.isMissionaryNumber(call[CallList.RECEIVER]) && !(mission.isSpecialNumber(call[CallList.CALLER]) || mission.isSpecialNumber(call[CallList.RECEIVER]))) {
-				if (!mission.isSameZone(call[CallList.CALLER], call[CallList.RECEIVER])) {
-					Map<String, String> violator = new HashMap<String, String>();
-					
-					//add the data to the violator
-					violator.put("caller", mission.getAreaString(call[CallList.CALLER]));
-					violator.put("receiver", mission.getAreaString(call[CallList.RECEIVER]));
-					violator.put("date", calls.getMonth() + "/" + call[CallList.START].substring(0, 2));
-					
-					violators.add(violator);
-				}
-			}
+	private void writeMetrics(ExcelWriter writer) {
+		writer.addHeader(new String[] {"Phase", "Kind", "Runs", "Total ms", "Last ms", "Rows", "Rows/s", "MB Allocated"});
+		List<PhaseStats> phases = metrics.getPhases();
+		for (int i = 0; i < phases.size(); i++) {
+			PhaseStats phase = phases.get(i);
+			long bytes = phase.getAllocatedBytes();
+			writer.addRow(new String[] {phase.getName(), phase.getKind()}, new double[] {phase.getRuns(), phase.getTotalMillis(),
+					phase.getLastMillis(), phase.getItems(), Math.round(phase.getItemsPerSecond()), bytes < 0 ? -1 : bytes / 1048576.0});
 		}
-		return violators;
 	}
 	
 	/*
-	 * Check for calls to home phones
-	 * RETURN VALUE: Map of Maps containing information about the violators
+	 * Runs the whole analysis from the command line without opening any windows, printing how long each
+	 * step took
+	 * PARAMETER: String[] args - the command line arguments, see printUsage()
+	 * RETURN VALUE: int - the exit code, 0 = success
 	 * */
-	private Map<String, Map<String, String>> checkHomePhones() {
-		Map<String, Map<String, String>> violators = new HashMap<String, Map<String, String>>();
+	private static int runBatch(String[] args) {
+		String orgFile = null;
+		List<String> callFiles = new ArrayList<String>();
+		String firstMonth = null;
+		String lastMonth = null;
+		String transfer = null;
+		String outFile = RESULTS_FILE;
+		int storage = CallList.HEAP;
+		String stateDir = null;
+		String rulesFile = null;
+		int queuedBatches = 0;//0 = load the whole call list before analyzing it
+		String historyFile = null;
+		String window = null;//phone number,day,HH:mm,HH:mm of the calls to list, null = don't list any
 		
-		//loop through all the phone calls looking for calls to house phones
-		Iterator<String[]> callList = calls.iterator();
-		while (callList.hasNext()) {
-			String[] call = callList.next();
-			
-			//check for home phones and make sure that the caller isn't a special number
-			if (!calls.isCellPhone(call[CallList.RECEIVER]) && !mission.isSpecialNumber(call[CallList.CALLER])) {
-				//only add a new Map if there isn't already one for the companionship
-				if (!violators.containsKey(call[CallList.CALLER])) {
-					Map<String, String> violator = new HashMap<String, String>();
-					violator.put("missionaries", mission.getAreaString(call[CallList.CALLER]));
-					violator.put("count", "1");
-					violators.put(call[CallList.CALLER], violator);
+		//read the arguments, each option is followed by its value
+		if (args.length % 2 != 0) {
+			printUsage();
+			return EXIT_USAGE;
+		}
+		for (int i = 0; i < args.length; i += 2) {
+			String option = args[i];
+			String value = args[i + 1];
+			if (option.equals("-org"))
+				orgFile = value;
+			else if (option.equals("-calls"))
+				callFiles.add(value);
+			else if (option.equals("-month")) {
+				firstMonth = value;
+				lastMonth = value;
+			}
+			else if (option.equals("-from"))
+				firstMonth = value;
+			else if (option.equals("-to"))
+				lastMonth = value;
+			else if (option.equals("-transfer"))
+				transfer = value;
+			else if (option.equals("-out"))
+				outFile = value;
+			else if (option.equals("-state"))
+				stateDir = value;
+			else if (option.equals("-rules"))
+				rulesFile = value;
+			else if (option.equals("-history"))
+				historyFile = value;
+			else if (option.equals("-window"))
+				window = value;
+			else if (option.equals("-pipeline")) {
+				try {
+					queuedBatches = Integer.parseInt(value);
 				}
-				//if the number's already in there, just add one to the counter on the companionship
-				else {
-					Map<String, String> violator = violators.get(call[CallList.CALLER]);
-					int count = Integer.parseInt(violator.get("count")) + 1;
-					violator.put("count", count + "");
+				catch (NumberFormatException e) {
+					queuedBatches = -1;
 				}
+				if (queuedBatches < 1) {
+					printUsage();
+					return EXIT_USAGE;
+				}
+			}
+			else if (option.equals("-store") && value.equals("heap"))
+				storage = CallList.HEAP;
+			else if (option.equals("-store") && value.equals("direct"))
+				storage = CallList.DIRECT;
+			else if (option.equals("-store") && value.equals("mapped"))
+				storage = CallList.MAPPED;
+			else {
+				printUsage();
+				return EXIT_USAGE;
 			}
 		}
 		
-		return violators;
+		//do simple tests for the required arguments
+		if (orgFile == null || callFiles.isEmpty() || transfer == null || transfer.length() != 10 ||
+				(queuedBatches > 0 && (stateDir != null || window != null))) {
+			printUsage();
+			return EXIT_USAGE;
+		}
+		
+		//make sure nothing tries to use the display
+		System.setProperty("java.awt.headless", "true");
+		PhoneAnalytics analytics = new PhoneAnalytics(false);
+		analytics.setCallStorage(storage);
+		if (stateDir != null)
+			analytics.setStateDirectory(new File(stateDir));
+		if (historyFile != null)
+			analytics.setHistoryFile(new File(historyFile));
+		
+		long start = System.nanoTime();
+		if (rulesFile != null && !analytics.initRules(rulesFile))
+			return EXIT_FAILED;
+		if (!analytics.initOrganization(orgFile))
+			return EXIT_FAILED;
+		start = printTime("Loaded mission organization", start);
+		
+		if (queuedBatches > 0) {
+			if (!analytics.runPipelined(callFiles, transfer, firstMonth, lastMonth, outFile, queuedBatches, null))
+				return EXIT_FAILED;
+			start = printTime("Read, analyzed and wrote results to " + outFile, start);
+		}
+		else {
+			if (!analytics.initCallList(callFiles, transfer, null))
+				return EXIT_FAILED;
+			start = printTime("Loaded " + analytics.calls.size() + " calls", start);
+			
+			if (window != null) {
+				if (!analytics.printWindow(window))
+					return EXIT_FAILED;
+				start = printTime("Listed the calls in " + window, start);
+			}
+		
+			List<RuleEngine> engines = analytics.analyze(firstMonth, lastMonth, null);
+			if (engines == null)
+				return EXIT_FAILED;
+			start = printTime("Analyzed " + engines.size() + " months of calls", start);
+		
+			if (!analytics.writeResults(engines, outFile))
+				return EXIT_FAILED;
+			printTime("Wrote results to " + outFile, start);
+		}
+		
+		//show where the time went, phase by phase and rule by rule
+		List<PhaseStats> phases = analytics.metrics.getPhases();
+		for (int i = 0; i < phases.size(); i++) {
+			PhaseStats phase = phases.get(i);
+			System.out.println(String.format("  %-5s %-28s %10.1f ms %12.0f rows/s %10.1f MB", phase.getKind(), phase.getName(),
+					phase.getTotalMillis(), phase.getItemsPerSecond(), phase.getAllocatedBytes() / 1048576.0));
+		}
+		
+		return 0;
 	}
 	
 	/*
-	 * Checks for companionships that went over their monthly minute limits
-	 * RETURN VALUE: Map of Maps containing information on violators
+	 * Prints the calls a phone number made in a window of one day of the week, in every month of the call list
+	 * PARAMETER: String window - the phone number ("any" = every phone number), the day of the week, the start
+	 * 	of the window and its end, separated by commas, like 0912345678,friday,10:00,13:30
+	 * RETURN VALUE: boolean - true = operation succeeded, false = operation failed
 	 * */
-	private Map<String, Map<String, String>> checkTotalMinutes() throws ParseException {
-		Map<String, Map<String, String>> totals = calls.getTotalMinutes();
-		Map<String, Map<String, String>> violators = new HashMap<String, Map<String, String>>();
-		
-		//loop through the totals, checking for ones that went over monthly limits
-		Iterator<String> phones = totals.keySet().iterator();
-		while (phones.hasNext()) {
-			Map<String, String> phone = totals.get(phones.next());
-			if (wentOverLimit(phone.get("phone"), Integer.parseInt(phone.get("count")))) {
-				Map<String, String> violator = new HashMap<String, String>();
-				violator.put("missionaries", mission.getAreaString(phone.get("phone")));
-				violator.put("count", phone.get("count"));
-				
-				violators.put(phone.get("phone"), violator);
+	private boolean printWindow(String window) {
+		String[] parts = window.split(",");
+		int caller = -1;
+		int dayOfWeek;
+		int fromMinute;
+		int toMinute;
+		try {
+			if (parts.length != 4)
+				throw new IllegalArgumentException("The window must be a phone number, a day and two times: " + window);
+			if (!parts[0].trim().equalsIgnoreCase("any")) {
+				caller = phones.findId(parts[0].trim());
+				if (caller < 0)
+					throw new IllegalArgumentException("The phone number " + parts[0].trim() + " isn't in the call list");
 			}
+			dayOfWeek = RuleSettings.parseDayName(parts[1].trim(), "-window");
+			fromMinute = RuleSettings.parseTimeOfDay(parts[2].trim(), "-window");
+			toMinute = RuleSettings.parseTimeOfDay(parts[3].trim(), "-window");
+		}
+		catch (IllegalArgumentException e) {
+			setError("Error: " + e.getMessage());
+			return false;
 		}
 		
-		return violators;
+		final CallQuery query = getQuery();
+		int[] numbers = query.getCallsInWindow(caller, dayOfWeek, fromMinute, toMinute);
+		
+		//the calls are in the order they're in the call list, which isn't always the order they were made in
+		Integer[] found = new Integer[numbers.length];
+		for (int i = 0; i < numbers.length; i++)
+			found[i] = numbers[i];
+		Arrays.sort(found, new Comparator<Integer>() {
+			public int compare(Integer call1, Integer call2) {
+				CallPartition month1 = query.getPartition(call1);
+				CallPartition month2 = query.getPartition(call2);
+				if (month1 != month2)
+					return call1.compareTo(call2);
+				int index1 = query.getCallIndex(call1);
+				int index2 = query.getCallIndex(call2);
+				int day = month1.getDay(index1) - month2.getDay(index2);
+				return day != 0 ? day : month1.getStartMinute(index1) - month2.getStartMinute(index2);
+			}
+		});
+		
+		System.out.println(found.length + " calls by " + parts[0].trim() + " on " + parts[1].trim() + " from " +
+				RuleSettings.formatTime(fromMinute) + " to " + RuleSettings.formatTime(toMinute) + ":");
+		for (int i = 0; i < found.length; i++) {
+			CallPartition month = query.getPartition(found[i]);
+			int call = query.getCallIndex(found[i]);
+			System.out.println("  " + month.getYear() + "/" + month.getMonth() + "/" + String.format("%02d", month.getDay(call)) + " " +
+					RuleSettings.formatTime(month.getStartMinute(call)) + " - " + RuleSettings.formatTime(month.getEndMinute(call)) + "  " +
+					getPhoneName(month.getCallerId(call)) + " to " + getPhoneName(month.getReceiverId(call)));
+		}
+		return true;
 	}
 	
 	/*
-	 * Checks whether a particular number is over their limit
-	 * PARAMETER: String phone - the phone number to check
-	 * PARAMETER: int minutes - the amount that phone number called
-	 * RETURN VALUE: boolean - true = the companionship went over the limit, false = didn't
+	 * Names a phone number for printing
+	 * PARAMETER: int phone - the id of the phone number
+	 * RETURN VALUE: String - the area, or the phone number if it isn't a missionary number
 	 * */
-	private boolean wentOverLimit(String phone, int minutes) {
-		boolean wentOver = false;
-		String companionshipType = mission.getCompanionshipType(phone);
-		
-		if (companionshipType.equals("E") && minutes > ELDER_LIMIT)
-			wentOver = true;
-		else if (companionshipType.equals("S") && minutes > SISTER_LIMIT)
-			wentOver = true;
-		else if (companionshipType.equals("DL") && minutes > DISTRICT_LIMIT)
-			wentOver = true;
-		else if (companionshipType.equals("ZL") && minutes > ZONE_LIMIT)
-			wentOver = true;
-		
-		return wentOver;
+	private String getPhoneName(int phone) {
+		if (mission.getAreaId(phone) < 0)
+			return phones.getPhone(phone);
+		return mission.getAreaString(phone);
+	}
+	
+	/*
+	 * Prints how long a step took
+	 * PARAMETER: String step - a description of the step
+	 * PARAMETER: long start - when the step started, from System.nanoTime()
+	 * RETURN VALUE: long - the time now, for timing the next step
+	 * */
+	private static long printTime(String step, long start) {
+		long now = System.nanoTime();
+		System.out.println(step + " in " + ((now - start) / 1000000) + " ms");
+		return now;
+	}
+	
+	/*
+	 * Prints how to run the analysis from the command line
+	 * */
+	private static void printUsage() {
+		System.err.println("Usage: PhoneAnalytics -org <organization.xls> -calls <calls.xls> [-calls <more calls.xls> ...] -transfer <yyyy/mm/dd> " + 
+				"[-month <yyyy/mm> | -from <yyyy/mm> -to <yyyy/mm>] [-out <results.xlsx>] [-store heap|direct|mapped] " +
+				"[-state <directory>] [-rules <rules.properties>] [-pipeline <batches>] [-history <results.history>] " +
+				"[-window <phone>,<day>,<HH:mm>,<HH:mm>]");
+		System.err.println("Every month in the call list is analyzed unless a month or range of months is given.");
+		System.err.println("Give -calls more than once to load several call lists at the same time.");
+		System.err.println("-state saves the analysis of each month, so a longer export of the month only has its new calls checked.");
+		System.err.println("-rules changes the times, limits and exemptions the rules check, see RuleSettings for the settings.");
+		System.err.println("-store direct or mapped keeps the calls off the heap, for very large call lists.");
+		System.err.println("-pipeline checks the calls while they're read, holding no more than that many batches of " +
+				CallPipeline.BATCH_SIZE + " calls at once. It can't be used with -state or outOfZone.detail.");
+		System.err.println("-history adds the results of each month to the file, for comparing months later on.");
+		System.err.println("-window <phone>,<day>,<HH:mm>,<HH:mm> lists the calls the phone number (or any) made in that time " +
+				"of the day every week. It can't be used with -pipeline.");
+		System.err.println("Run without arguments to open the GUI.");
 	}
 	
-	public static void main(String[] main) throws IOException, ParseException {
+	/*
+	 * Opens the GUI, or runs the analysis from the command line if there are any arguments
+	 * */
+	public static void main(String[] args) throws IOException {
+		if (args.length > 0)
+			System.exit(runBatch(args));
 		
 		PhoneAnalytics analytics = new PhoneAnalytics();
 	}
+	
+	/*This nested class passes progress on with the calls checked in the earlier months added on*/
+	private static class OffsetProgress implements ProgressListener {
+		private ProgressListener progress;
+		private long offset;
+		
+		public OffsetProgress(ProgressListener progress, long offset) {
+			this.progress = progress;
+			this.offset = offset;
+		}
+		
+		public void progress(long count) {
+			progress.progress(offset + count);
+		}
+		
+		public boolean isCancelled() {
+			return progress.isCancelled();
+		}
+	}
 }
@@ -0,0 +1,129 @@
+package analytics;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Gives every distinct phone number a small, stable int id. The mission organization and call lists
+ * both look their numbers up here, so a number is only normalized and stored once no matter how many
+ * calls it appears in, and comparing two numbers is just comparing their ids. Call lists are read on
+ * several threads at once, so numbers that have been seen before are looked up without locking.
+ * */
+
+public class PhoneDirectory {
+	
+	//the id of each phone number as it was written in a file, so each way of writing it is only normalized once.
+	//It's only added to once the number's id is ready, so it can be read without locking
+	private Map<String, Integer> rawIds;
+	
+	//the id of each normalized phone number, only used while holding the lock
+	private Map<String, Integer> ids;
+	
+	//the normalized phone numbers, indexed by id. Only ever grows, so it can be read without locking
+	private volatile String[] phones;
+	private int size;
+	
+	public PhoneDirectory() {
+		rawIds = new ConcurrentHashMap<String, Integer>();
+		ids = new HashMap<String, Integer>();
+		phones = new String[1024];
+		size = 0;
+	}
+	
+	/*
+	 * Gets the id of a phone number, giving it a new one if it hasn't been seen before
+	 * PARAMETER: String raw - the phone number as it was written in the file
+	 * RETURN VALUE: int - the phone number's id
+	 * */
+	public int getId(String raw) {
+		Integer id = rawIds.get(raw);
+		if (id != null)
+			return id;
+		return addId(raw);
+	}
+	
+	/*
+	 * Gets the id of a way of writing a phone number that getId() didn't find, giving the number a new id if
+	 * it hasn't been seen written any way before
+	 * PARAMETER: String raw - the phone number as it was written in the file
+	 * RETURN VALUE: int - the phone number's id
+	 * */
+	private synchronized int addId(String raw) {
+		//another thread may have added it since getId() looked
+		Integer id = rawIds.get(raw);
+		if (id != null)
+			return id;
+		
+		//this way of writing the number hasn't been seen yet, normalize it and look it up
+		String phone = normalize(raw);
+		id = ids.get(phone);
+		if (id == null) {
+			id = size;
+			String[] grown = phones;
+			if (size == grown.length)
+				grown = Arrays.copyOf(grown, size * 2);
+			grown[size++] = phone;
+			phones = grown;
+			ids.put(phone, id);
+		}
+		rawIds.put(raw, id);
+		return id;
+	}
+	
+	/*
+	 * Looks up the id of a phone number without adding it to the directory
+	 * PARAMETER: String raw - the phone number, written any way
+	 * RETURN VALUE: int - the phone number's id, or -1 if it isn't in the directory
+	 * */
+	public int findId(String raw) {
+		Integer id = rawIds.get(raw);
+		if (id != null)
+			return id;
+		return findNormalized(normalize(raw));
+	}
+	
+	/*
+	 * Looks up the id of a normalized phone number
+	 * PARAMETER: String phone - the normalized phone number
+	 * RETURN VALUE: int - the phone number's id, or -1 if it isn't in the directory
+	 * */
+	private synchronized int findNormalized(String phone) {
+		Integer id = ids.get(phone);
+		if (id == null)
+			return -1;
+		return id;
+	}
+	
+	/*
+	 * Returns the phone number with the given id
+	 * PARAMETER: int id - an id given out by getId
+	 * RETURN VALUE: String - the normalized phone number
+	 * */
+	public String getPhone(int id) {
+		return phones[id];
+	}
+	
+	/*
+	 * Returns the number of phone numbers in the directory, ids go from 0 up to this number
+	 * */
+	public synchronized int size() {
+		return size;
+	}
+	
+	/*
+	 * Normalizes a phone number by taking out dashes and spaces
+	 * PARAMETER: String raw - the phone number as it was written
+	 * RETURN VALUE: String - the phone number with only its digits (and any other characters) left
+	 * */
+	static String normalize(String raw) {
+		StringBuilder phone = new StringBuilder(raw.length());
+		for (int i = 0; i < raw.length(); i++) {
+			char c = raw.charAt(i);
+			if (c != '-' && !Character.isWhitespace(c))
+				phone.append(c);
+		}
+		return phone.toString();
+	}
+}
@@ -0,0 +1,21 @@
+package analytics;
+
+/*
+ * Receives progress updates from a long running load or analysis, and lets the caller cancel it.
+ * Updates can come from any thread.
+ * */
+
+public interface ProgressListener {
+	
+	/*
+	 * Called every so often with how far along the work is
+	 * PARAMETER: long count - the number of rows read or calls checked so far
+	 * */
+	public void progress(long count);
+	
+	/*
+	 * Checked every so often by the work, which stops with a CancellationException once this returns true
+	 * RETURN VALUE: boolean - true = stop the work, false = keep going
+	 * */
+	public boolean isCancelled();
+}
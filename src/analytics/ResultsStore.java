@@ -0,0 +1,391 @@
+package analytics;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/*
+ * Keeps the results of every month that has been analyzed in one file, so how a companionship's results
+ * change from month to month can be looked up without reading any call lists again. Each run adds the
+ * months it analyzed onto the end of the file, and the newest results of a month replace older ones.
+ *
+ * The file is a header followed by one block per month that was stored, in big endian order:
+ * 	header - magic number, version
+ * 	block - the length of the block's body, the body, the CRC32 of the body
+ * 	body - the month (months since year 0), when it was stored, the number of rules, then for each rule its
+ * 		name, the number of companionships, their phone numbers in sorted order and then their counts
+ * A block that was only partly written when a run stopped fails its length or CRC check. It and
+ * anything after it are ignored, and written over by the next block.
+ * */
+
+public class ResultsStore {
+	
+	private static final int MAGIC = 0x50415253;//"PARS"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 8;
+	
+	private File file;
+	
+	//where the newest block of each month is, by month (months since year 0): its offset and the length of its body
+	private TreeMap<Integer, long[]> months;
+	
+	//the blocks that have been read, by offset
+	private Map<Long, Month> read;
+	
+	//the length of the file up to the end of the last whole block
+	private long length;
+	
+	/*
+	 * Opens a store, reading where each month's results are. The file is created when the first month is added.
+	 * PARAMETER: File file - the file the results are kept in
+	 * THROWS: IOException if the file isn't a results store
+	 * */
+	public ResultsStore(File file) throws IOException {
+		this.file = file;
+		months = new TreeMap<Integer, long[]>();
+		read = new HashMap<Long, Month>();
+		length = 0;
+		if (!file.isFile() || file.length() == 0)
+			return;
+		
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			if (in.length() < HEADER_SIZE || in.readInt() != MAGIC || in.readInt() != VERSION)
+				throw new IOException("Not a results store: " + file.getPath());
+			length = HEADER_SIZE;
+			
+			//find the whole blocks, only the month at the start of each body is read
+			CRC32 crc = new CRC32();
+			while (length + 4 <= in.length()) {
+				in.seek(length);
+				int size = in.readInt();
+				if (size < 4 || length + 4 + size + 4 > in.length())
+					break;
+				byte[] body = new byte[size];
+				in.readFully(body);
+				crc.reset();
+				crc.update(body, 0, size);
+				if (in.readInt() != (int) crc.getValue())
+					break;
+				
+				int month = new DataInputStream(new ByteArrayInputStream(body)).readInt();
+				months.put(month, new long[] {length + 4, size});
+				length += 4 + size + 4;
+			}
+		}
+		finally {
+			in.close();
+		}
+	}
+	
+	/*
+	 * Adds a month's results onto the end of the store, replacing any results the month already had
+	 * PARAMETER: Month month - the results
+	 * THROWS: IOException if the file can't be written
+	 * */
+	public synchronized void append(Month month) throws IOException {
+		byte[] body = month.toBytes();
+		CRC32 crc = new CRC32();
+		crc.update(body, 0, body.length);
+		
+		RandomAccessFile out = new RandomAccessFile(file, "rw");
+		try {
+			//a new file gets a header, a partly written block at the end is written over
+			if (length == 0) {
+				out.setLength(0);
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				length = HEADER_SIZE;
+			}
+			out.setLength(length);
+			out.seek(length);
+			out.writeInt(body.length);
+			out.write(body);
+			out.writeInt((int) crc.getValue());
+			out.getFD().sync();
+		}
+		finally {
+			out.close();
+		}
+		
+		months.put(month.month, new long[] {length + 4, body.length});
+		read.put(length + 4, month.sorted());
+		length += 4 + body.length + 4;
+	}
+	
+	/*
+	 * Returns the months the store has results for, oldest first
+	 * RETURN VALUE: List<int[]> - the year and then the month (1 - 12) of each month
+	 * */
+	public synchronized List<int[]> getMonths() {
+		List<int[]> list = new ArrayList<int[]>(months.size());
+		Integer[] keys = months.keySet().toArray(new Integer[months.size()]);
+		for (int i = 0; i < keys.length; i++)
+			list.add(new int[] {keys[i] / 12, keys[i] % 12 + 1});
+		return list;
+	}
+	
+	/*
+	 * Returns the results of a month
+	 * PARAMETER: int year - the year
+	 * PARAMETER: int month - the month (1 - 12)
+	 * RETURN VALUE: Month - the newest results stored for the month, null if there aren't any
+	 * THROWS: IOException if the file can't be read
+	 * */
+	public synchronized Month getMonth(int year, int month) throws IOException {
+		long[] block = months.get(year * 12 + month - 1);
+		if (block == null)
+			return null;
+		
+		Month results = read.get(block[0]);
+		if (results == null) {
+			byte[] body = new byte[(int) block[1]];
+			RandomAccessFile in = new RandomAccessFile(file, "r");
+			try {
+				in.seek(block[0]);
+				in.readFully(body);
+			}
+			finally {
+				in.close();
+			}
+			results = Month.fromBytes(body);
+			read.put(block[0], results);
+		}
+		return results;
+	}
+	
+	/*
+	 * Returns a companionship's results for one rule over a range of months
+	 * PARAMETER: String rule - the name of the rule
+	 * PARAMETER: String phone - the phone number of the companionship
+	 * PARAMETER: int fromYear - the year of the first month
+	 * PARAMETER: int fromMonth - the first month (1 - 12)
+	 * PARAMETER: int toYear - the year of the last month
+	 * PARAMETER: int toMonth - the last month (1 - 12), the range includes it
+	 * RETURN VALUE: long[] - the result of each month in the range, in order, -1 for months that weren't stored
+	 * THROWS: IllegalArgumentException if the range ends before it starts
+	 * THROWS: IOException if the file can't be read
+	 * */
+	public synchronized long[] getTrend(String rule, String phone, int fromYear, int fromMonth, int toYear, int toMonth) throws IOException {
+		int from = fromYear * 12 + fromMonth - 1;
+		int to = toYear * 12 + toMonth - 1;
+		if (to < from)
+			throw new IllegalArgumentException("The last month of the trend is before the first month");
+		
+		long[] trend = new long[to - from + 1];
+		for (int key = from; key <= to; key++) {
+			Month month = getMonth(key / 12, key % 12 + 1);
+			trend[key - from] = month == null ? -1 : month.getCount(rule, phone);
+		}
+		return trend;
+	}
+	
+	/*This nested class holds the results of one month, by rule and companionship*/
+	public static class Month {
+		private int month;//months since year 0
+		private long stored;//when the results were stored, in milliseconds since 1970
+		
+		//the results of each rule by the rule's name, and the names in the order the rules were added
+		private Map<String, Counts> rules;
+		private List<String> ruleNames;
+		
+		/*
+		 * Creates an empty month of results
+		 * PARAMETER: int year - the year
+		 * PARAMETER: int month - the month (1 - 12)
+		 * */
+		public Month(int year, int month) {
+			this(year * 12 + month - 1, System.currentTimeMillis());
+		}
+		
+		private Month(int month, long stored) {
+			this.month = month;
+			this.stored = stored;
+			rules = new HashMap<String, Counts>();
+			ruleNames = new ArrayList<String>();
+		}
+		
+		/*
+		 * Adds a companionship's result for a rule
+		 * PARAMETER: String rule - the name of the rule
+		 * PARAMETER: String phone - the phone number of the companionship
+		 * PARAMETER: long count - the result
+		 * */
+		public void add(String rule, String phone, long count) {
+			getCounts(rule).add(phone, count);
+		}
+		
+		/*
+		 * Gets the results of a rule, adding the rule if it isn't there yet
+		 * PARAMETER: String rule - the name of the rule
+		 * RETURN VALUE: Counts - the rule's results
+		 * */
+		private Counts getCounts(String rule) {
+			Counts counts = rules.get(rule);
+			if (counts == null) {
+				counts = new Counts();
+				rules.put(rule, counts);
+				ruleNames.add(rule);
+			}
+			return counts;
+		}
+		
+		/*
+		 * Returns the year of the month
+		 * */
+		public int getYear() {
+			return month / 12;
+		}
+		
+		/*
+		 * Returns the month (1 - 12)
+		 * */
+		public int getMonth() {
+			return month % 12 + 1;
+		}
+		
+		/*
+		 * Returns when the results were stored, in milliseconds since 1970
+		 * */
+		public long getStored() {
+			return stored;
+		}
+		
+		/*
+		 * Returns the names of the rules the month has results for, in the order they were added
+		 * */
+		public List<String> getRules() {
+			return new ArrayList<String>(ruleNames);
+		}
+		
+		/*
+		 * Returns a companionship's result for a rule
+		 * PARAMETER: String rule - the name of the rule
+		 * PARAMETER: String phone - the phone number of the companionship
+		 * RETURN VALUE: long - the result, 0 if the companionship didn't have one
+		 * */
+		public long getCount(String rule, String phone) {
+			Counts counts = rules.get(rule);
+			if (counts == null)
+				return 0;
+			counts.sort();
+			int found = Arrays.binarySearch(counts.phones, 0, counts.size, phone);
+			return found < 0 ? 0 : counts.counts[found];
+		}
+		
+		/*
+		 * Sorts the phone numbers of every rule, so they can be searched
+		 * RETURN VALUE: Month - this month
+		 * */
+		private Month sorted() {
+			for (int i = 0; i < ruleNames.size(); i++)
+				rules.get(ruleNames.get(i)).sort();
+			return this;
+		}
+		
+		/*
+		 * Writes the month out as the body of a block
+		 * RETURN VALUE: byte[] - the body
+		 * */
+		private byte[] toBytes() throws IOException {
+			sorted();
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(month);
+			out.writeLong(stored);
+			out.writeInt(ruleNames.size());
+			for (int i = 0; i < ruleNames.size(); i++) {
+				Counts counts = rules.get(ruleNames.get(i));
+				out.writeUTF(ruleNames.get(i));
+				out.writeInt(counts.size);
+				for (int j = 0; j < counts.size; j++)
+					out.writeUTF(counts.phones[j]);
+				for (int j = 0; j < counts.size; j++)
+					out.writeLong(counts.counts[j]);
+			}
+			out.close();
+			return bytes.toByteArray();
+		}
+		
+		/*
+		 * Reads a month back from the body of a block
+		 * PARAMETER: byte[] body - the body
+		 * RETURN VALUE: Month - the month, its phone numbers are already sorted
+		 * */
+		private static Month fromBytes(byte[] body) throws IOException {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+			Month results = new Month(in.readInt(), in.readLong());
+			int ruleCount = in.readInt();
+			for (int i = 0; i < ruleCount; i++) {
+				Counts counts = results.getCounts(in.readUTF());
+				int size = in.readInt();
+				counts.phones = new String[size];
+				counts.counts = new long[size];
+				for (int j = 0; j < size; j++)
+					counts.phones[j] = in.readUTF();
+				for (int j = 0; j < size; j++)
+					counts.counts[j] = in.readLong();
+				counts.size = size;
+			}
+			return results;
+		}
+	}
+	
+	/*This nested class holds one rule's results, a count for each phone number*/
+	private static class Counts {
+		private String[] phones = new String[16];
+		private long[] counts = new long[16];
+		private int size = 0;
+		private boolean sorted = true;//whether the phone numbers are in order, so they can be searched
+		
+		public void add(String phone, long count) {
+			if (size == phones.length) {
+				phones = Arrays.copyOf(phones, Math.max(16, size * 2));
+				counts = Arrays.copyOf(counts, Math.max(16, size * 2));
+			}
+			phones[size] = phone;
+			counts[size] = count;
+			size++;
+			sorted = false;
+		}
+		
+		/*
+		 * Sorts the phone numbers if they aren't already, keeping each one's count with it
+		 * */
+		public void sort() {
+			if (sorted)
+				return;
+			Integer[] order = new Integer[size];
+			for (int i = 0; i < size; i++)
+				order[i] = i;
+			final String[] unsorted = phones;
+			Arrays.sort(order, new Comparator<Integer>() {
+				public int compare(Integer a, Integer b) {
+					return unsorted[a].compareTo(unsorted[b]);
+				}
+			});
+			
+			String[] sortedPhones = new String[size];
+			long[] sortedCounts = new long[size];
+			for (int i = 0; i < size; i++) {
+				sortedPhones[i] = phones[order[i]];
+				sortedCounts[i] = counts[order[i]];
+			}
+			phones = sortedPhones;
+			counts = sortedCounts;
+			sorted = true;
+		}
+	}
+}
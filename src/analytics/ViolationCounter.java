@@ -0,0 +1,88 @@
+package analytics;
+
+import java.util.Arrays;
+
+/*
+ * Counts something (violations, seconds, minutes) for each of a set of dense ids, the area ids of the
+ * companionships for the rules, or phone ids. Counting is just an array increment, the phone numbers and
+ * area names are only looked up when the results are written. The counter grows if it's given an id past
+ * its end, so it can start small and only grow as big as the ids it's actually given.
+ * */
+
+public class ViolationCounter {
+	
+	//the count for each id
+	private long[] counts;
+	
+	/*
+	 * Constructor
+	 * PARAMETER: int size - the number of ids there's room for at first (ids go from 0 to size - 1)
+	 * */
+	public ViolationCounter(int size) {
+		counts = new long[size];
+	}
+	
+	/*
+	 * Adds one to the count of an id
+	 * PARAMETER: int id - the id
+	 * */
+	public void add(int id) {
+		if (id >= counts.length)
+			grow(id + 1);
+		counts[id]++;
+	}
+	
+	/*
+	 * Adds an amount to the count of an id
+	 * PARAMETER: int id - the id
+	 * PARAMETER: long amount - the amount to add
+	 * */
+	public void add(int id, long amount) {
+		if (id >= counts.length)
+			grow(id + 1);
+		counts[id] += amount;
+	}
+	
+	/*
+	 * Adds all the counts from another counter onto this one
+	 * PARAMETER: ViolationCounter other - a counter for the same ids, it can hold more of them than this one
+	 * */
+	public void addAll(ViolationCounter other) {
+		if (other.counts.length > counts.length)
+			grow(other.counts.length);
+		for (int id = 0; id < other.counts.length; id++)
+			counts[id] += other.counts[id];
+	}
+	
+	/*
+	 * Returns the count of an id
+	 * PARAMETER: int id - the id
+	 * */
+	public long get(int id) {
+		if (id >= counts.length)
+			return 0;
+		return counts[id];
+	}
+	
+	/*
+	 * Returns the number of ids the counter can hold
+	 * */
+	public int size() {
+		return counts.length;
+	}
+	
+	/*
+	 * Makes room for more ids, the new ones start at zero
+	 * PARAMETER: int size - the number of ids the counter needs to hold
+	 * */
+	private void grow(int size) {
+		counts = Arrays.copyOf(counts, Math.max(size, counts.length * 2));
+	}
+	
+	/*
+	 * Sets every count back to zero
+	 * */
+	public void clear() {
+		Arrays.fill(counts, 0);
+	}
+}
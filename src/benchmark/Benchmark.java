@@ -0,0 +1,361 @@
+package benchmark;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import analytics.CallList;
+import analytics.CallPartition;
+import analytics.MissionOrganization;
+import analytics.PhoneDirectory;
+import excel.CallHandler;
+import excel.DelimitedReader;
+import excel.ExcelReader;
+import excel.ExcelWriter;
+import rules.FiveMinuteRule;
+import rules.HomePhoneRule;
+import rules.NightCallRule;
+import rules.NineMinuteRule;
+import rules.OutOfZoneRule;
+import rules.ProselytingHoursRule;
+import rules.Rule;
+import rules.RuleEngine;
+import rules.RuleSettings;
+import rules.TotalMinutesRule;
+
+/*
+ * Measures how fast the mission organization and call lists are read, the rules are checked and the results
+ * are written, on files made up by the MissionGenerator. Each step is run a number of times to warm up and
+ * then a number of times measured, and the time and memory allocated by each run is printed, so numbers
+ * from before and after a change can be compared.
+ *
+ * Memory allocated is read from the JVM's per thread counters. Threads that finish during a run, like the
+ * workers of the parallel steps, aren't counted, so those numbers are a lower bound.
+ * */
+
+public class Benchmark {
+	
+	//the month the made up calls are in
+	private static final int YEAR = 2012;
+	private static final int MONTH = 5;
+	private static final String TRANSFER = "2012/05/21";
+	
+	private static final long SEED = 42;
+	
+	private int warmup;//the runs of each step that aren't measured
+	private int iterations;//the runs of each step that are measured
+	private com.sun.management.ThreadMXBean allocations;//null if the JVM can't count allocated memory
+	
+	/*
+	 * Constructor
+	 * PARAMETER: int warmup - the number of runs of each step before it is measured
+	 * PARAMETER: int iterations - the number of runs of each step that are measured
+	 * */
+	public Benchmark(int warmup, int iterations) {
+		this.warmup = warmup;
+		this.iterations = iterations;
+		
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			allocations = (com.sun.management.ThreadMXBean) threads;
+			if (allocations.isThreadAllocatedMemorySupported())
+				allocations.setThreadAllocatedMemoryEnabled(true);
+			else
+				allocations = null;
+		}
+	}
+	
+	/*
+	 * Runs one step a number of times and prints how long it took and how much memory it allocated
+	 * PARAMETER: Step step - the step to measure
+	 * */
+	public void measure(Step step) throws Exception {
+		for (int i = 0; i < warmup; i++)
+			step.run();
+		
+		long totalTime = 0;
+		long minTime = Long.MAX_VALUE;
+		long totalBytes = 0;
+		long items = 0;
+		System.gc();
+		for (int i = 0; i < iterations; i++) {
+			Map<Long, Long> before = getAllocatedBytes();
+			long start = System.nanoTime();
+			items = step.run();
+			long time = System.nanoTime() - start;
+			totalBytes += getAllocatedSince(before);
+			
+			totalTime += time;
+			minTime = Math.min(minTime, time);
+		}
+		
+		double meanMillis = totalTime / 1000000.0 / iterations;
+		double itemsPerSecond = items / (meanMillis / 1000.0);
+		String allocated = "n/a";
+		String allocationRate = "n/a";
+		if (allocations != null) {
+			double megabytes = totalBytes / 1048576.0 / iterations;
+			allocated = String.format("%.1f", megabytes);
+			allocationRate = String.format("%.0f", megabytes / (meanMillis / 1000.0));
+		}
+		System.out.println(String.format("%-48s %10.1f %10.1f %14.0f %-8s %10s %10s", step.name, meanMillis, minTime / 1000000.0,
+				itemsPerSecond, step.unit + "/s", allocated, allocationRate));
+	}
+	
+	/*
+	 * Prints the column headers of the measurements
+	 * */
+	public void printHeader() {
+		System.out.println(String.format("%-48s %10s %10s %23s %10s %10s", "Step", "ms/op", "min ms", "throughput", "MB/op", "MB/s"));
+	}
+	
+	/*
+	 * Gets how much memory each live thread has allocated so far
+	 * RETURN VALUE: Map<Long, Long> - the bytes allocated, keyed by thread id, empty if the JVM can't count them
+	 * */
+	private Map<Long, Long> getAllocatedBytes() {
+		Map<Long, Long> bytes = new HashMap<Long, Long>();
+		if (allocations == null)
+			return bytes;
+		
+		long[] ids = allocations.getAllThreadIds();
+		long[] allocated = allocations.getThreadAllocatedBytes(ids);
+		for (int i = 0; i < ids.length; i++) {
+			if (allocated[i] >= 0)
+				bytes.put(ids[i], allocated[i]);
+		}
+		return bytes;
+	}
+	
+	/*
+	 * Works out how much memory the live threads have allocated since getAllocatedBytes() was called
+	 * PARAMETER: Map<Long, Long> before - what getAllocatedBytes() returned
+	 * RETURN VALUE: long - the bytes allocated since then
+	 * */
+	private long getAllocatedSince(Map<Long, Long> before) {
+		Map<Long, Long> after = getAllocatedBytes();
+		long total = 0;
+		for (Map.Entry<Long, Long> thread : after.entrySet()) {
+			Long start = before.get(thread.getKey());
+			total += thread.getValue() - (start == null ? 0 : start);
+		}
+		return total;
+	}
+	
+	/*
+	 * Makes the files, if they aren't there from an earlier run, and measures every step
+	 * PARAMETER: File directory - where the made up files are kept
+	 * PARAMETER: int areas - the number of areas in the mission
+	 * PARAMETER: int calls - the number of calls in the call list
+	 * */
+	public void run(File directory, final int areas, int calls) throws Exception {
+		directory.mkdirs();
+		final String orgFile = new File(directory, "org-" + areas + ".xls").getPath();
+		final String csvFile = new File(directory, "calls-" + areas + "-" + calls + ".csv").getPath();
+		final int xlsCalls = Math.min(calls, MissionGenerator.MAX_XLS_CALLS);
+		final String xlsFile = new File(directory, "calls-" + areas + "-" + xlsCalls + ".xls").getPath();
+		
+		if (!new File(orgFile).isFile())
+			new MissionGenerator(areas, SEED).writeOrganization(orgFile);
+		if (!new File(csvFile).isFile())
+			new MissionGenerator(areas, SEED).writeCallList(csvFile, calls, YEAR, MONTH);
+		if (!new File(xlsFile).isFile())
+			new MissionGenerator(areas, SEED).writeCallList(xlsFile, xlsCalls, YEAR, MONTH);
+		
+		//loading the call list once makes its snapshot, the rules are checked against these
+		final PhoneDirectory phones = new PhoneDirectory();
+		final MissionOrganization mission = new MissionOrganization(orgFile, phones);
+		final CallPartition month = new CallList(csvFile, phones, TRANSFER).getPartitions().get(0);
+		final List<Rule> rules = createRules(mission, month);
+		
+		System.out.println(areas + " areas, " + month.size() + " calls (" + xlsCalls + " in the .xls), " + warmup + " warmup and " +
+				iterations + " measured runs of each step");
+		printHeader();
+		
+		measure(new Step("Read mission organization (ExcelReader)", "areas") {
+			protected long run() throws Exception {
+				return ExcelReader.getMissionOrganization(orgFile, new PhoneDirectory()).size();
+			}
+		});
+		measure(new Step("Build mission organization", "areas") {
+			protected long run() throws Exception {
+				new MissionOrganization(orgFile, new PhoneDirectory());
+				return areas;
+			}
+		});
+		measure(new Step("Read call list .xls (ExcelReader)", "calls") {
+			protected long run() throws Exception {
+				CallCounter counter = new CallCounter();
+				ExcelReader.readCallList(xlsFile, new PhoneDirectory(), counter);
+				return counter.count;
+			}
+		});
+		measure(new Step("Read call list .csv (DelimitedReader)", "calls") {
+			protected long run() throws Exception {
+				CallCounter counter = new CallCounter();
+				DelimitedReader.readCallList(csvFile, new PhoneDirectory(), counter);
+				return counter.count;
+			}
+		});
+		measure(new Step("Load call list from snapshot (CallList)", "calls") {
+			protected long run() throws Exception {
+				return new CallList(csvFile, new PhoneDirectory(), TRANSFER).size();
+			}
+		});
+		
+		//each rule on its own, then all of them together the way the analysis runs them
+		for (int j = 0; j < rules.size(); j++) {
+			final Rule rule = rules.get(j);
+			measure(new Step("Rule " + rule.getClass().getSimpleName(), "calls") {
+				protected long run() {
+					RuleEngine engine = new RuleEngine(month);
+					engine.addRule(rule.copy());
+					engine.run();
+					return month.size();
+				}
+			});
+		}
+		measure(new Step("All rules, one pass (RuleEngine.run)", "calls") {
+			protected long run() {
+				createEngine(rules, month).run();
+				return month.size();
+			}
+		});
+		measure(new Step("All rules, parallel (RuleEngine.runParallel)", "calls") {
+			protected long run() {
+				createEngine(rules, month).runParallel();
+				return month.size();
+			}
+		});
+		measure(new Step("Total minutes (CallPartition.getTotalMinutes)", "calls") {
+			protected long run() {
+				month.getTotalMinutes();
+				return month.size();
+			}
+		});
+		
+		final RuleEngine analyzed = createEngine(rules, month);
+		analyzed.run();
+		final String resultsFile = new File(directory, "results.xlsx").getPath();
+		measure(new Step("Write results (ExcelWriter)", "reports") {
+			protected long run() {
+				ExcelWriter writer = new ExcelWriter(true);
+				writer.addSheet(month.getYear() + "-" + month.getMonth());
+				analyzed.write(writer);
+				if (!writer.write(resultsFile))
+					throw new IllegalStateException("Couldn't write " + resultsFile);
+				return 1;
+			}
+		});
+	}
+	
+	/*
+	 * Sets up the mission's rules with the default settings, the way the analysis does
+	 * PARAMETER: MissionOrganization mission - the mission the calls belong to
+	 * PARAMETER: CallPartition month - the calls to check
+	 * RETURN VALUE: List<Rule> - the rules, with nothing checked yet
+	 * */
+	private static List<Rule> createRules(MissionOrganization mission, CallPartition month) {
+		RuleSettings settings = new RuleSettings();
+		List<Rule> rules = new ArrayList<Rule>();
+		rules.add(new ProselytingHoursRule(mission, month, settings));
+		rules.add(new NightCallRule(mission, month, settings));
+		rules.add(new FiveMinuteRule(mission, month, settings));
+		rules.add(new NineMinuteRule(mission, month, settings));
+		rules.add(new OutOfZoneRule(mission, month, settings));
+		rules.add(new HomePhoneRule(mission, month, settings));
+		rules.add(new TotalMinutesRule(mission, month, settings));
+		return rules;
+	}
+	
+	/*
+	 * Makes an engine with an empty copy of each rule
+	 * PARAMETER: List<Rule> rules - the rules
+	 * PARAMETER: CallPartition month - the calls to check
+	 * RETURN VALUE: RuleEngine - the engine, with nothing checked yet
+	 * */
+	private static RuleEngine createEngine(List<Rule> rules, CallPartition month) {
+		RuleEngine engine = new RuleEngine(month);
+		for (int j = 0; j < rules.size(); j++)
+			engine.addRule(rules.get(j).copy());
+		return engine;
+	}
+	
+	/*
+	 * Runs the benchmark from the command line
+	 * */
+	public static void main(String[] args) throws Exception {
+		int areas = 100;
+		int calls = 1000000;
+		int warmup = 3;
+		int iterations = 5;
+		File directory = new File(System.getProperty("java.io.tmpdir"), "phone-analytics-benchmark");
+		
+		//read the arguments, each option is followed by its value
+		try {
+			if (args.length % 2 != 0)
+				throw new IllegalArgumentException();
+			for (int i = 0; i < args.length; i += 2) {
+				String option = args[i];
+				String value = args[i + 1];
+				if (option.equals("-areas"))
+					areas = Integer.parseInt(value);
+				else if (option.equals("-calls"))
+					calls = Integer.parseInt(value);
+				else if (option.equals("-warmup"))
+					warmup = Integer.parseInt(value);
+				else if (option.equals("-iterations"))
+					iterations = Integer.parseInt(value);
+				else if (option.equals("-dir"))
+					directory = new File(value);
+				else
+					throw new IllegalArgumentException();
+			}
+			if (areas < 2 || calls < 1 || warmup < 0 || iterations < 1)
+				throw new IllegalArgumentException();
+		}
+		catch (IllegalArgumentException e) {
+			System.err.println("Usage: Benchmark [-areas <count>] [-calls <count>] [-warmup <runs>] [-iterations <runs>] [-dir <directory>]");
+			System.err.println("The made up files are kept in the directory and reused by later runs of the same size.");
+			System.exit(2);
+		}
+		
+		System.setProperty("java.awt.headless", "true");
+		new Benchmark(warmup, iterations).run(directory, areas, calls);
+	}
+	
+	/*This nested class is one step of the work that is measured*/
+	public static abstract class Step {
+		private String name;
+		private String unit;
+		
+		/*
+		 * Constructor
+		 * PARAMETER: String name - the name of the step, for the results
+		 * PARAMETER: String unit - what the step counts, for the throughput
+		 * */
+		public Step(String name, String unit) {
+			this.name = name;
+			this.unit = unit;
+		}
+		
+		/*
+		 * Does the step once
+		 * RETURN VALUE: long - the number of things it handled, in the step's unit
+		 * */
+		protected abstract long run() throws Exception;
+	}
+	
+	/*This nested class counts the calls read out of a call list without keeping them*/
+	private static class CallCounter implements CallHandler {
+		private long count;
+		
+		public void handleCall(int caller, int receiver, int year, int month, int start, int end) {
+			count++;
+		}
+	}
+}
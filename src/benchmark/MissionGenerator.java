@@ -0,0 +1,185 @@
+package benchmark;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Random;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+
+import excel.DelimitedReader;
+
+/*
+ * Makes up mission organization and call list files of any size, for measuring how fast they're read and
+ * analyzed. The same seed always makes the same files, so runs before and after a change can be compared.
+ * */
+
+public class MissionGenerator {
+	
+	//the most calls an .xls call list can hold, one row is the header
+	public static final int MAX_XLS_CALLS = 65535;
+	
+	//the number of areas in each zone
+	private static final int ZONE_SIZE = 8;
+	
+	//the companionship types given to the areas of a zone, in order, one area of the mission is a special number
+	private static final String[] TYPES = {"ZL", "DL", "E", "E", "S", "DL", "E", "S"};
+	
+	private int areas;
+	private Random random;
+	
+	/*
+	 * Constructor
+	 * PARAMETER: int areas - the number of areas in the mission
+	 * PARAMETER: long seed - the seed of the random numbers the calls are made from
+	 * */
+	public MissionGenerator(int areas, long seed) {
+		if (areas < 2)
+			throw new IllegalArgumentException("A mission needs at least 2 areas: " + areas);
+		this.areas = areas;
+		random = new Random(seed);
+	}
+	
+	/*
+	 * Makes up the phone number of an area
+	 * PARAMETER: int area - the index of the area
+	 * RETURN VALUE: String - the phone number
+	 * */
+	private static String getAreaPhone(int area) {
+		return String.format("0911-%06d", area);
+	}
+	
+	/*
+	 * Writes a mission organization file, with the same columns as the real one
+	 * PARAMETER: String filePath - where to write the .xls file
+	 * */
+	public void writeOrganization(String filePath) throws IOException {
+		HSSFWorkbook workbook = new HSSFWorkbook();
+		Sheet sheet = workbook.createSheet();
+		String[] header = {"Zone", "Area", "Missionaries", "Phone", "Type"};
+		Row row = sheet.createRow(0);
+		for (int i = 0; i < header.length; i++)
+			row.createCell(i).setCellValue(header[i]);
+		
+		for (int area = 0; area < areas; area++) {
+			row = sheet.createRow(area + 1);
+			row.createCell(0).setCellValue("Zone" + (area / ZONE_SIZE));
+			row.createCell(1).setCellValue("Area" + area);
+			row.createCell(2).setCellValue("Elder A" + area + " / Elder B" + area);
+			row.createCell(3).setCellValue(getAreaPhone(area));
+			row.createCell(4).setCellValue(area == areas - 1 ? "SP" : TYPES[area % ZONE_SIZE]);
+		}
+		
+		OutputStream out = new FileOutputStream(filePath);
+		try {
+			workbook.write(out);
+		}
+		finally {
+			out.close();
+		}
+	}
+	
+	/*
+	 * Writes a call list file of calls made by the areas during one month. About 60% of the calls are to
+	 * other areas, the rest are to other cell phones and landlines, and 2% are internet charges.
+	 * PARAMETER: String filePath - where to write the file, a .csv, .tsv or .txt is delimited text, anything else is .xls
+	 * PARAMETER: int calls - the number of rows to write
+	 * PARAMETER: int year - the year the calls are in
+	 * PARAMETER: int month - the month the calls are in (1 - 12)
+	 * THROWS: IllegalArgumentException if an .xls file can't hold that many calls
+	 * */
+	public void writeCallList(String filePath, int calls, int year, int month) throws IOException {
+		boolean delimited = DelimitedReader.isDelimited(filePath);
+		if (!delimited && calls > MAX_XLS_CALLS)
+			throw new IllegalArgumentException("An .xls call list can only hold " + MAX_XLS_CALLS + " calls: " + calls);
+		
+		HSSFWorkbook workbook = null;
+		Sheet sheet = null;
+		Writer writer = null;
+		if (delimited) {
+			writer = new BufferedWriter(new FileWriter(filePath));
+			writer.write("Caller,Date,Start,End,Receiver\n");
+		}
+		else {
+			workbook = new HSSFWorkbook();
+			sheet = workbook.createSheet();
+			Row row = sheet.createRow(0);
+			row.createCell(0).setCellValue("Caller");
+			row.createCell(1).setCellValue("Date");
+		}
+		
+		try {
+			String[] fields = new String[5];
+			for (int i = 0; i < calls; i++) {
+				int count = makeCall(fields, year, month);
+				if (delimited) {
+					for (int j = 0; j < count; j++)
+						writer.write(j == 0 ? fields[j] : "," + fields[j]);
+					writer.write('\n');
+				}
+				else {
+					Row row = sheet.createRow(i + 1);
+					for (int j = 0; j < count; j++)
+						row.createCell(j).setCellValue(fields[j]);
+				}
+			}
+			
+			if (!delimited) {
+				OutputStream out = new FileOutputStream(filePath);
+				try {
+					workbook.write(out);
+				}
+				finally {
+					out.close();
+				}
+			}
+		}
+		finally {
+			if (writer != null)
+				writer.close();
+		}
+	}
+	
+	/*
+	 * Makes up one row of the call list
+	 * PARAMETER: String[] fields - filled in with the caller, date, start, end and receiver
+	 * PARAMETER: int year - the year the call is in
+	 * PARAMETER: int month - the month the call is in (1 - 12)
+	 * RETURN VALUE: int - the number of fields filled in, 3 for an internet charge, otherwise 5
+	 * */
+	private int makeCall(String[] fields, int year, int month) {
+		fields[0] = getAreaPhone(random.nextInt(areas));
+		fields[1] = String.format("%04d/%02d/%02d", year, month, 1 + random.nextInt(28));
+		
+		//most calls are short, some go on for up to 15 minutes
+		int start = random.nextInt(86400 - 1200);
+		int end = start + random.nextInt(random.nextInt(4) == 0 ? 900 : 240);
+		fields[2] = formatTime(start);
+		if (random.nextInt(50) == 0)
+			return 3;
+		fields[3] = formatTime(end);
+		
+		int kind = random.nextInt(10);
+		if (kind < 6)
+			fields[4] = getAreaPhone(random.nextInt(areas));
+		else if (kind < 9)
+			fields[4] = String.format("0922%06d", random.nextInt(1000000));
+		else
+			fields[4] = String.format("04%08d", random.nextInt(100000000));
+		return 5;
+	}
+	
+	/*
+	 * Formats a time the way the call list has it (HHmmss)
+	 * PARAMETER: int seconds - the seconds since midnight
+	 * RETURN VALUE: String - the formatted time
+	 * */
+	private static String formatTime(int seconds) {
+		return String.format("%02d%02d%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+	}
+}
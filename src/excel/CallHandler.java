@@ -0,0 +1,20 @@
+package excel;
+
+/*
+ * Receives the calls read out of a call list Excel file one at a time, as they are decoded,
+ * so that the reader never has to hold the whole workbook in memory
+ * */
+
+public interface CallHandler {
+	
+	/*
+	 * Called once for every call read from the call list
+	 * PARAMETER: int caller - the id of the phone number that made the call
+	 * PARAMETER: int receiver - the id of the phone number that was called
+	 * PARAMETER: int year - the year the call was made in
+	 * PARAMETER: int month - the month the call was made in (1 - 12)
+	 * PARAMETER: int start - when the call started, in seconds since the start of the month
+	 * PARAMETER: int end - when the call ended, in seconds since the start of the month
+	 * */
+	public void handleCall(int caller, int receiver, int year, int month, int start, int end);
+}
@@ -0,0 +1,278 @@
+package excel;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import analytics.CallPartition;
+import analytics.PhoneDirectory;
+
+/*
+ * This class reads a Call List out of a delimited text file (comma, semicolon, tab or pipe separated),
+ * with the same columns as the Excel call list: caller, date (yyyy/MM/dd), start (HHmmss), end (HHmmss),
+ * receiver. The file is read through a channel in big blocks and decoded byte by byte, the date and
+ * times are turned into numbers straight from the bytes without making Strings out of them.
+ * */
+
+public class DelimitedReader {
+	
+	//the file extensions that are read as delimited text instead of as a workbook
+	private static final String[] EXTENSIONS = {".csv", ".tsv", ".txt"};
+	
+	//the delimiters that are looked for in the first line, the most common one is used
+	private static final byte[] DELIMITERS = {',', ';', '\t', '|'};
+	
+	//how much of the file is read at a time
+	private static final int BLOCK_SIZE = 64 * 1024;
+	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	/*
+	 * Determines if a call list file should be read as delimited text
+	 * PARAMETER: String filePath - the location of the call list file
+	 * RETURN VALUE: boolean - true = delimited text, false = an Excel workbook
+	 * */
+	public static boolean isDelimited(String filePath) {
+		String name = filePath.toLowerCase();
+		for (int i = 0; i < EXTENSIONS.length; i++) {
+			if (name.endsWith(EXTENSIONS[i]))
+				return true;
+		}
+		return false;
+	}
+	
+	/*
+	 * Reads the calls out of a delimited text file, handing each one to the handler as soon as its line
+	 * has been decoded. A first line that isn't a call, like a title or column names, is skipped.
+	 * PARAMETER: String filePath = the location of the call list file
+	 * PARAMETER: PhoneDirectory phones = gives the ids of the caller and receiver of each call
+	 * PARAMETER: CallHandler handler = receives each call as it is read
+	 * THROWS: IllegalArgumentException if a call has a date or time that can't be read
+	 * */
+	public static void readCallList(String filePath, PhoneDirectory phones, CallHandler handler) throws IOException {
+		if (filePath == null || phones == null || handler == null)
+			throw new IllegalArgumentException();
+		
+		FileInputStream stream = new FileInputStream(filePath);
+		try {
+			FileChannel channel = stream.getChannel();
+			LineParser parser = new LineParser(phones, handler);
+			
+			//read a block at a time, a line cut off at the end of a block is moved to the front of the buffer
+			ByteBuffer buffer = ByteBuffer.allocate(BLOCK_SIZE);
+			while (channel.read(buffer) >= 0) {
+				buffer.flip();
+				byte[] bytes = buffer.array();
+				int lineStart = 0;
+				for (int i = 0; i < buffer.limit(); i++) {
+					if (bytes[i] == '\n') {
+						parser.parseLine(bytes, lineStart, i);
+						lineStart = i + 1;
+					}
+				}
+				buffer.position(lineStart);
+				buffer.compact();
+				
+				//a line longer than the whole buffer needs a bigger buffer
+				if (!buffer.hasRemaining()) {
+					ByteBuffer bigger = ByteBuffer.allocate(buffer.capacity() * 2);
+					buffer.flip();
+					bigger.put(buffer);
+					buffer = bigger;
+				}
+			}
+			
+			//the last line might not end with a new line
+			buffer.flip();
+			if (buffer.hasRemaining())
+				parser.parseLine(buffer.array(), 0, buffer.limit());
+		}
+		finally {
+			stream.close();
+		}
+	}
+	
+	/*
+	 * Decodes the lines of a delimited call list one at a time, keeping track of where the fields are in
+	 * the line so nothing is copied until a phone number is looked up
+	 * */
+	private static class LineParser {
+		private PhoneDirectory phones;
+		private CallHandler handler;
+		private byte delimiter;//0 until the first line has been seen
+		
+		//the start and end of each non empty field of the current line
+		private int[] fieldStarts;
+		private int[] fieldEnds;
+		private int fields;
+		
+		public LineParser(PhoneDirectory phones, CallHandler handler) {
+			this.phones = phones;
+			this.handler = handler;
+			delimiter = 0;
+			fieldStarts = new int[CallPartition.NUM_DATA_POINTS + 4];
+			fieldEnds = new int[fieldStarts.length];
+		}
+		
+		/*
+		 * Decodes one line and hands the call to the handler
+		 * PARAMETER: byte[] bytes - the bytes holding the line
+		 * PARAMETER: int from - the index of the line's first byte
+		 * PARAMETER: int to - the index after the line's last byte
+		 * */
+		public void parseLine(byte[] bytes, int from, int to) {
+			//skip blank lines
+			if (to - from == 0 || (to - from == 1 && bytes[from] == '\r'))
+				return;
+			
+			boolean firstLine = false;
+			if (delimiter == 0) {
+				//leave out the byte order mark some programs put at the start of UTF-8 files
+				if (to - from >= 3 && bytes[from] == (byte) 0xef && bytes[from + 1] == (byte) 0xbb && bytes[from + 2] == (byte) 0xbf)
+					from += 3;
+				delimiter = findDelimiter(bytes, from, to);
+				firstLine = true;
+			}
+			
+			splitFields(bytes, from, to);
+			
+			//a title or column names at the top is skipped, it won't have a date in the second field
+			if (firstLine && (fields < 2 || bytes[fieldStarts[1]] < '0' || bytes[fieldStarts[1]] > '9'))
+				return;
+			
+			//if there's nothing after the start time, it's an internet charge, skip it, the same as in a workbook
+			if (fields < 5)
+				return;
+			
+			//get the date of the call (yyyy/MM/dd)
+			int date = fieldStarts[1];
+			int year = parseDigits(bytes, date, date + 4, fieldEnds[1]);
+			int month = parseDigits(bytes, date + 5, date + 7, fieldEnds[1]);
+			int day = parseDigits(bytes, date + 8, date + 10, fieldEnds[1]);
+			if (month < 1 || month > 12 || day < 1 || day > 31)
+				throw new IllegalArgumentException("Couldn't read the call date or time: " + getText(bytes, 1));
+			int dayStart = (day - 1) * CallPartition.SECONDS_PER_DAY;
+			
+			//the start and end times are in HHmmss format
+			int start = dayStart + parseTime(bytes, 2);
+			int end = dayStart + parseTime(bytes, 3);
+			
+			handler.handleCall(phones.getId(getText(bytes, 0)), phones.getId(getText(bytes, 4)), year, month, start, end);
+		}
+		
+		/*
+		 * Finds the start and end of each non empty field in a line, leaving out spaces, quotes and carriage
+		 * returns around the field
+		 * PARAMETER: byte[] bytes - the bytes holding the line
+		 * PARAMETER: int from - the index of the line's first byte
+		 * PARAMETER: int to - the index after the line's last byte
+		 * */
+		private void splitFields(byte[] bytes, int from, int to) {
+			fields = 0;
+			int fieldStart = from;
+			for (int i = from; i <= to; i++) {
+				if (i < to && bytes[i] != delimiter)
+					continue;
+				
+				int start = fieldStart;
+				int end = i;
+				while (start < end && isPadding(bytes[start]))
+					start++;
+				while (end > start && isPadding(bytes[end - 1]))
+					end--;
+				if (start < end) {
+					if (fields == fieldStarts.length) {
+						fieldStarts = Arrays.copyOf(fieldStarts, fields * 2);
+						fieldEnds = Arrays.copyOf(fieldEnds, fields * 2);
+					}
+					fieldStarts[fields] = start;
+					fieldEnds[fields] = end;
+					fields++;
+				}
+				fieldStart = i + 1;
+			}
+		}
+		
+		/*
+		 * Converts a time field in HHmmss format into seconds since midnight
+		 * PARAMETER: byte[] bytes - the bytes holding the line
+		 * PARAMETER: int field - the index of the field
+		 * RETURN VALUE: int - the seconds since midnight
+		 * */
+		private int parseTime(byte[] bytes, int field) {
+			int time = fieldStarts[field];
+			int end = fieldEnds[field];
+			return parseDigits(bytes, time, time + 2, end) * 3600 + parseDigits(bytes, time + 2, time + 4, end) * 60 +
+					parseDigits(bytes, time + 4, time + 6, end);
+		}
+		
+		/*
+		 * Reads a number out of part of a field
+		 * PARAMETER: byte[] bytes - the bytes holding the line
+		 * PARAMETER: int from - the index of the first digit
+		 * PARAMETER: int to - the index after the last digit
+		 * PARAMETER: int fieldEnd - the index after the end of the field
+		 * RETURN VALUE: int - the number
+		 * THROWS: IllegalArgumentException if the field isn't all digits there
+		 * */
+		private int parseDigits(byte[] bytes, int from, int to, int fieldEnd) {
+			if (fieldEnd < to)
+				throw new IllegalArgumentException("Couldn't read the call date or time: " + new String(bytes, from, fieldEnd - from, UTF8));
+			
+			int number = 0;
+			for (int i = from; i < to; i++) {
+				byte digit = bytes[i];
+				if (digit < '0' || digit > '9')
+					throw new IllegalArgumentException("Couldn't read the call date or time: " + new String(bytes, from, fieldEnd - from, UTF8));
+				number = number * 10 + (digit - '0');
+			}
+			return number;
+		}
+		
+		/*
+		 * Makes a String out of a field
+		 * PARAMETER: byte[] bytes - the bytes holding the line
+		 * PARAMETER: int field - the index of the field
+		 * RETURN VALUE: String - the text of the field
+		 * */
+		private String getText(byte[] bytes, int field) {
+			return new String(bytes, fieldStarts[field], fieldEnds[field] - fieldStarts[field], UTF8);
+		}
+		
+		/*
+		 * Determines if a byte is left out from around a field
+		 * PARAMETER: byte b - the byte
+		 * RETURN VALUE: boolean - true = a space, quote or carriage return, false = part of the field
+		 * */
+		private boolean isPadding(byte b) {
+			return b == ' ' || b == '"' || b == '\r' || (b == '\t' && delimiter != '\t');
+		}
+		
+		/*
+		 * Works out which delimiter a file uses from its first line
+		 * PARAMETER: byte[] bytes - the bytes holding the line
+		 * PARAMETER: int from - the index of the line's first byte
+		 * PARAMETER: int to - the index after the line's last byte
+		 * RETURN VALUE: byte - the delimiter that shows up the most, a comma if none of them do
+		 * */
+		private static byte findDelimiter(byte[] bytes, int from, int to) {
+			int[] counts = new int[DELIMITERS.length];
+			for (int i = from; i < to; i++) {
+				for (int j = 0; j < DELIMITERS.length; j++) {
+					if (bytes[i] == DELIMITERS[j])
+						counts[j]++;
+				}
+			}
+			
+			int best = 0;
+			for (int j = 1; j < DELIMITERS.length; j++) {
+				if (counts[j] > counts[best])
+					best = j;
+			}
+			return DELIMITERS[best];
+		}
+	}
+}
@@ -1,5 +1,6 @@
 package excel;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -8,13 +9,25 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import org.apache.poi.hssf.eventusermodel.HSSFEventFactory;
+import org.apache.poi.hssf.eventusermodel.HSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFRequest;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.SSTRecord;
 import org.apache.poi.hssf.usermodel.HSSFSheet;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.poifs.filesystem.NPOIFSFileSystem;
 import org.apache.poi.poifs.filesystem.POIFSFileSystem;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.Row;
 
-import analytics.CallList;
+import analytics.CallPartition;
+import analytics.PhoneDirectory;
 
 /*
  * This class simply contains a static method that will read the Mission Organization or Call List out of 
@@ -22,14 +35,15 @@ import analytics.CallList;
  * */
 
 public class ExcelReader {
-		
+	
 	/*This method reads the file MissionOrganization.xls and gets the mission's organization
 	 * from the file.
 	 * PARAMTER: String filePath = String containing the file path to the Excel file
+	 * PARAMTER: PhoneDirectory phones = normalizes the phone numbers, they are stored as the directory's copy
 	 * RETURN VALUE: Set = a set of sets which represent zones holding maps which represent areas
 	 * */
-	public static Map<String, Map<String, String>> getMissionOrganization(String filePath) throws IOException {
-		if (filePath == null) 
+	public static Map<String, Map<String, String>> getMissionOrganization(String filePath, PhoneDirectory phones) throws IOException {
+		if (filePath == null || phones == null) 
 			throw new IllegalArgumentException();
 		
 		//initialize the Map which will contain the mission
@@ -41,23 +55,23 @@ public class ExcelReader {
 		rows.next();//skip the title row
 		while (rows.hasNext()) {
 			Row row = rows.next();
-
+			
 			//get an Iterator to iterate over the cells of the row
 			Iterator<Cell> cells = row.cellIterator();
-
+			
 			//create the Map that will contain the area's data
 			Map<String, String> area = new HashMap<String, String>();
-
+			
 			//get all the data out of the row and put it into a Map
 			area.put("zone", cells.next().getStringCellValue());
 			area.put("area", cells.next().getStringCellValue());
 			area.put("missionaries", cells.next().getStringCellValue());
-			area.put("phone", cells.next().getStringCellValue().replaceAll("-", ""));
+			area.put("phone", phones.getPhone(phones.getId(cells.next().getStringCellValue())));
 			area.put("type", cells.next().getStringCellValue());
-
+			
 			mission.put(area.get("phone"), area);
 		}
-
+		
 		//remove the entry that's there because of the blank rows in the file
 		mission.remove("");
 			
@@ -65,58 +79,178 @@ public class ExcelReader {
 	}
 	
 	/*
-	 * Returns the Call List represented as a List of Map containing call data as read from an Excel file
+	 * Streams the Call List out of an Excel file using POI's event API, handing each call to the handler
+	 * as soon as its row has been decoded. The workbook's object model is never built, so memory use
+	 * doesn't grow with the size of the file.
 	 * PARAMETER: String filePath = the location of the call list Excel file
-	 * RETURN VALUE: List<Map<String, String>> = Each Map within the List will represent an individual
-	 * 	call, and each piece of data is represented by a String
+	 * PARAMETER: PhoneDirectory phones = gives the ids of the caller and receiver of each call
+	 * PARAMETER: CallHandler handler = receives each call as it is read
 	 * */
-	public static List<String[]> getCallList(String filePath) throws IOException {
-		if (filePath == null)
+	public static void readCallList(String filePath, PhoneDirectory phones, CallHandler handler) throws IOException {
+		if (filePath == null || phones == null || handler == null)
 			throw new IllegalArgumentException();
 		
-		//initialize the List that will represent the call list
-		List<String[]> calls = new ArrayList<String[]>();
-		
-		Iterator<Row> rows = getRows(filePath);
-		
-		//loop through the rows of the work sheet
-		rows.next();//skip the title row
-		while (rows.hasNext()) {
-			Row row = rows.next();
-
-			//get an Iterator to iterate over the cells of the row
-			Iterator<Cell> cells = row.cellIterator();
-			
-			//create the Map that will contain the call data
-			String[] call = new String[CallList.NUM_DATA_POINTS];
+		NPOIFSFileSystem fileSystem = new NPOIFSFileSystem(new File(filePath));
+		try {
+			InputStream stream = fileSystem.createDocumentInputStream("Workbook");
 			
-			call[CallList.CALLER] = cells.next().getStringCellValue().trim();
+			//listen to every record, the listener will pick out the cells of the first sheet
+			HSSFRequest request = new HSSFRequest();
+			request.addListenerForAllRecords(new CallRecordListener(phones, handler));
 			
-			//get the date of the call (omit year and month to make the string smaller for memory)
-			String date = cells.next().getStringCellValue();
-			date = date.substring(5);
-			
-			//add the starting time
-			String startTime = cells.next().getStringCellValue();
-			startTime = startTime.substring(0,2) + ":" + startTime.substring(2,4) + ":" + startTime.substring(4);
-			call[CallList.START] = date + " " + startTime;
-			
-			//if there's nothing in the next cell, it's an internet charge, skip it
-			if (!cells.hasNext())
-				continue;
-			
-			//add the ending time
-			String endTime = cells.next().getStringCellValue();
-			endTime = endTime.substring(0,2) + ":" + endTime.substring(2,4) + ":" + endTime.substring(4);
-			call[CallList.END] = date + " " + endTime;
+			HSSFEventFactory factory = new HSSFEventFactory();
+			factory.processEvents(request, stream);
+			stream.close();
+		}
+		finally {
+			fileSystem.close();
+		}
+	}
+	
+	/*
+	 * Decodes the cells of one row of the call list and hands the call to the handler. The date and times
+	 * are turned into numbers here, once, so nothing has to parse them again later.
+	 * PARAMETER: List<String> cells = the values of the non empty cells of the row, in order
+	 * PARAMETER: PhoneDirectory phones = gives the ids of the caller and receiver
+	 * PARAMETER: CallHandler handler = receives the call if the row is a phone call
+	 * THROWS: IllegalArgumentException if the date or a time isn't made of digits where expected
+	 * */
+	private static void handleRow(List<String> cells, PhoneDirectory phones, CallHandler handler) {
+		//if there's nothing after the start time, it's an internet charge, skip it
+		if (cells.size() < 5)
+			return;
+		
+		//get the date of the call (yyyy/MM/dd)
+		String date = cells.get(1);
+		int year = parseDigits(date, 0, 4);
+		int month = parseDigits(date, 5, 7);
+		int day = parseDigits(date, 8, 10);
+		if (month < 1 || month > 12 || day < 1 || day > 31)
+			throw new IllegalArgumentException("Couldn't read the call date or time: " + date);
+		int dayStart = (day - 1) * CallPartition.SECONDS_PER_DAY;
+		
+		//the start and end times are in HHmmss format
+		int start = dayStart + parseTime(cells.get(2));
+		int end = dayStart + parseTime(cells.get(3));
+		
+		handler.handleCall(phones.getId(cells.get(0)), phones.getId(cells.get(4)), year, month, start, end);
+	}
+	
+	/*
+	 * Converts a time in HHmmss format into seconds since midnight
+	 * PARAMETER: String time - the time to convert
+	 * RETURN VALUE: int - the seconds since midnight
+	 * */
+	private static int parseTime(String time) {
+		return parseDigits(time, 0, 2) * 3600 + parseDigits(time, 2, 4) * 60 + parseDigits(time, 4, 6);
+	}
+	
+	/*
+	 * Reads a number out of part of a String without creating any new Strings
+	 * PARAMETER: String text - the text containing the number
+	 * PARAMETER: int from - the index of the first digit
+	 * PARAMETER: int to - the index after the last digit
+	 * RETURN VALUE: int - the number
+	 * THROWS: IllegalArgumentException if the text isn't all digits there
+	 * */
+	private static int parseDigits(String text, int from, int to) {
+		if (text.length() < to)
+			throw new IllegalArgumentException("Couldn't read the call date or time: " + text);
+		
+		int number = 0;
+		for (int i = from; i < to; i++) {
+			char digit = text.charAt(i);
+			if (digit < '0' || digit > '9')
+				throw new IllegalArgumentException("Couldn't read the call date or time: " + text);
+			number = number * 10 + (digit - '0');
+		}
+		return number;
+	}
+	
+	/*
+	 * Listens to the records of a call list workbook, collecting the cells of the first sheet row by row
+	 * and handing each finished call to a CallHandler. Only the current row is ever kept.
+	 * */
+	private static class CallRecordListener implements HSSFListener {
+		private PhoneDirectory phones;
+		private CallHandler handler;
+		private SSTRecord strings;//the shared string table, cells refer to their text by index
+		private int sheet;//the number of worksheets seen so far
+		private int row;//the row that the collected cells belong to
+		private boolean titleRow;//true until the title row has been passed
+		private List<String> cells;
+		
+		public CallRecordListener(PhoneDirectory phones, CallHandler handler) {
+			this.phones = phones;
+			this.handler = handler;
+			sheet = 0;
+			row = -1;
+			titleRow = true;
+			cells = new ArrayList<String>(CallPartition.NUM_DATA_POINTS + 1);
+		}
+		
+		public void processRecord(Record record) {
+			switch (record.getSid()) {
+			case BOFRecord.sid:
+				if (((BOFRecord) record).getType() == BOFRecord.TYPE_WORKSHEET)
+					sheet++;
+				break;
+			case EOFRecord.sid:
+				//the end of the first sheet means the last row is done
+				if (sheet == 1)
+					endRow();
+				break;
+			case SSTRecord.sid:
+				strings = (SSTRecord) record;
+				break;
+			case LabelSSTRecord.sid:
+				LabelSSTRecord label = (LabelSSTRecord) record;
+				addCell(label.getRow(), strings.getString(label.getSSTIndex()).getString());
+				break;
+			case LabelRecord.sid:
+				LabelRecord text = (LabelRecord) record;
+				addCell(text.getRow(), text.getValue());
+				break;
+			case NumberRecord.sid:
+				NumberRecord number = (NumberRecord) record;
+				double value = number.getValue();
+				addCell(number.getRow(), value == Math.floor(value) ? Long.toString((long) value) : Double.toString(value));
+				break;
+			}
+		}
+		
+		/*
+		 * Adds a cell's value to the current row, finishing the previous row if the cell starts a new one
+		 * PARAMETER: int cellRow - the row the cell is in
+		 * PARAMETER: String value - the text of the cell
+		 * */
+		private void addCell(int cellRow, String value) {
+			//only the first sheet holds the call list
+			if (sheet != 1)
+				return;
 			
-			//add the receiver's number
-			call[CallList.RECEIVER] = cells.next().getStringCellValue();
-						
-			calls.add(call);
+			if (cellRow != row) {
+				endRow();
+				row = cellRow;
+			}
+			cells.add(value);
 		}
 		
-		return calls;
+		/*
+		 * Hands the collected row to the handler and clears it out for the next row
+		 * */
+		private void endRow() {
+			if (cells.isEmpty())
+				return;
+			
+			//skip the title row
+			if (titleRow)
+				titleRow = false;
+			else {
+				handleRow(cells, phones, handler);
+			}
+			cells.clear();
+		}
 	}
 	
 	private static Iterator<Row> getRows(String filePath) throws IOException {
@@ -124,12 +258,12 @@ public class ExcelReader {
 		
 		//try to create an InputString from the mission organization Excel file
 		InputStream stream = new FileInputStream(filePath);
-
+		
 		//try to read the Excel file
 		POIFSFileSystem fileSystem = null;
 		
 		fileSystem = new POIFSFileSystem(stream);
-
+		
 		//get an Iterator to iterate over the rows of the workbook
 		HSSFWorkbook workbook = new HSSFWorkbook(fileSystem);
 		HSSFSheet sheet = workbook.getSheetAt(0);
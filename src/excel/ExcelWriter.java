@@ -1,26 +1,61 @@
 package excel;
 
 import java.io.FileOutputStream;
-import java.util.Iterator;
-import java.util.List;
-import java.util.Map;
-import org.apache.poi.hssf.usermodel.HSSFCell;
-import org.apache.poi.hssf.usermodel.HSSFRow;
-import org.apache.poi.hssf.usermodel.HSSFSheet;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import analytics.MissionOrganization;
+import analytics.ViolationCounter;
 
 public class ExcelWriter {
 	
-	private HSSFWorkbook workbook;
-	private HSSFSheet sheet;
+	//the number of rows the streaming writer keeps in memory, older rows are flushed out to a temporary file
+	private static final int ROW_WINDOW = 100;
+	
+	private Workbook workbook;
+	private Sheet sheet;
 	private int rowNum;
 	
+	/*
+	 * Creates a writer for an .xls file, which is built up in memory until it is written
+	 * */
 	public ExcelWriter() {
-		workbook = new HSSFWorkbook();
+		this(false);
+	}
+	
+	/*
+	 * Creates a writer
+	 * PARAMETER: boolean streaming - true = write an .xlsx file, flushing rows out to disk as they are added
+	 * 	so the size of the results isn't limited by memory or the .xls row limit, false = write an .xls file
+	 * */
+	public ExcelWriter(boolean streaming) {
+		if (streaming)
+			workbook = new SXSSFWorkbook(ROW_WINDOW);
+		else
+			workbook = new HSSFWorkbook();
         sheet = workbook.createSheet();
         rowNum = 0;
 	}
 	
+	/*
+	 * Starts a new sheet, the rows added after this go onto it. If nothing has been written to the current
+	 * sheet yet, it is renamed instead so the file doesn't start with an empty sheet.
+	 * PARAMETER: String name - the name of the sheet
+	 * */
+	public void addSheet(String name) {
+		if (rowNum == 0) {
+			workbook.setSheetName(workbook.getSheetIndex(sheet), name);
+			return;
+		}
+		
+		sheet = workbook.createSheet(name);
+		rowNum = 0;
+	}
+	
 	/*
 	 * Adds a Title row to the Excel file
 	 * PARAMETER: String title - the title to be added
@@ -30,8 +65,8 @@ public class ExcelWriter {
 		sheet.createRow(rowNum++);
 		
 		//create the title
-		HSSFRow row = sheet.createRow(rowNum++);
-		HSSFCell cell = row.createCell(0);
+		Row row = sheet.createRow(rowNum++);
+		Cell cell = row.createCell(0);
 		cell.setCellValue(title);
 	}
 	
@@ -40,62 +75,75 @@ public class ExcelWriter {
 	 * PARAMETER: String[] header - contains the different items to go into the header
 	 */
 	public void addHeader(String[] header) {
-		HSSFRow row = sheet.createRow(rowNum++);
+		Row row = sheet.createRow(rowNum++);
 		
 		//loop through the header, putting in the items in the header
 		for (int i = 0; i < header.length; i++) {
-			HSSFCell cell = row.createCell(i);
+			Cell cell = row.createCell(i);
 			cell.setCellValue(header[i]);
 		}
 	}
 	
 	
 	/*
-	 * Adds a Map containing information about violators in the Excel file
-	 * PARAMETER: Map<String, Map<String, String>> violators - Map of Maps containing violators
+	 * Adds the counts of violators to the Excel file, one row for each companionship with a count
+	 * PARAMETER: ViolationCounter violators - the counts, keyed by area id
+	 * PARAMETER: MissionOrganization mission - used to turn the area ids into area names
 	 * */
-	public void addMap(Map<String, Map<String, String>> violators) {
-		//get an Iterator and iterate over the violators
-		Iterator<String> phones = violators.keySet().iterator();
-        while (phones.hasNext()) {
-        	Map<String, String> violator = violators.get(phones.next());
-        	
-        	//create the row and add the data to the cells
-        	HSSFRow row = sheet.createRow(rowNum++);
-            row.createCell(0).setCellValue(violator.get("missionaries"));
-            row.createCell(1).setCellValue(Double.parseDouble(violator.get("count")));
-        }
+	public void addMap(ViolationCounter violators, MissionOrganization mission) {
+		//loop over the area ids, only the ones with a count are violators
+		for (int area = 0; area < violators.size(); area++) {
+			long count = violators.get(area);
+			if (count == 0)
+				continue;
+			
+			//create the row and add the data to the cells
+			Row row = sheet.createRow(rowNum++);
+			row.createCell(0).setCellValue(mission.getAreaName(area));
+			row.createCell(1).setCellValue(count);
+		}
 	}
 	
 	/*
-	 * Adds a List containing information about violators in the Excel file
-	 * PARAMETER: List<Map<String, String>> violators - List of Maps containing violators
+	 * Adds a row of text followed by numbers to the Excel file
+	 * PARAMETER: String[] text - the text for the first cells of the row
+	 * PARAMETER: double[] numbers - the numbers for the cells after the text
 	 * */
-	public void addList(List<Map<String, String>> violators) {
-		//loop through the List, putting data into the Excel file
-		for (int i = 0; i < violators.size(); i++) {
-			Map<String, String> violator = violators.get(i);
-			
-			//create the row and add the data to the cells
-			HSSFRow row = sheet.createRow(rowNum++);
-			row.createCell(0).setCellValue(violator.get("caller"));
-			row.createCell(1).setCellValue(violator.get("receiver"));
-			row.createCell(2).setCellValue(violator.get("date"));
-		}
+	public void addRow(String[] text, double[] numbers) {
+		Row row = sheet.createRow(rowNum++);
+		for (int i = 0; i < text.length; i++)
+			row.createCell(i).setCellValue(text[i]);
+		for (int i = 0; i < numbers.length; i++)
+			row.createCell(text.length + i).setCellValue(numbers[i]);
 	}
 	
 	/*
 	 * Writes the Excel file to the specified file name
 	 * PARAMETER: String fileName - the name of the file to write to
+	 * RETURN VALUE: boolean - true = the file was written, false = something went wrong
 	 * */
-	public void write(String fileName) {
+	public boolean write(String fileName) {
 		try {
             FileOutputStream out = new FileOutputStream(fileName);
             workbook.write(out);
             out.close();
+            return true;
         }
 		catch(Exception e) { 
 			e.printStackTrace();
+			return false;
+		}
+		finally {
+			dispose();
 		}
 	}
+	
+	/*
+	 * Gets rid of the rows the streaming writer flushed to disk. write() does this itself, but a writer that
+	 * is given up on before it's written has to be disposed of. Disposing more than once does nothing more.
+	 * */
+	public void dispose() {
+		if (workbook instanceof SXSSFWorkbook)
+			((SXSSFWorkbook) workbook).dispose();
+	}
 }
@@ -11,6 +11,11 @@ import java.awt.event.ActionListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.swing.BorderFactory;
 import javax.swing.BoxLayout;
 import javax.swing.ImageIcon;
@@ -20,9 +25,12 @@ import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
 import javax.swing.border.EmptyBorder;
 
 import analytics.PhoneAnalytics;
+import analytics.ProgressListener;
 
 public class AnalyticsFrame extends JFrame implements ActionListener {
 	
@@ -30,7 +38,7 @@ public class AnalyticsFrame extends JFrame implements ActionListener {
 	private PhoneAnalytics analytics;
 	
 	private static final long serialVersionUID = 1L;
-
+	
 	private final int HEIGHT = 400;
 	private final int WIDTH = 600;
 	private final int BORDER_HEIGHT = 30;
@@ -45,12 +53,14 @@ public class AnalyticsFrame extends JFrame implements ActionListener {
 	
 	//button declarations
 	private JButton initOrg;
+	private JButton initRules;
 	private JButton initCalls;
 	private JButton runAnalysis;
+	private JButton cancel;
 	
 	//text field declarations
-	private JTextField year;
-	private JTextField month;
+	private JTextField firstMonth;
+	private JTextField lastMonth;
 	private JTextField transferDate;
 	
 	//the error label
@@ -59,6 +69,17 @@ public class AnalyticsFrame extends JFrame implements ActionListener {
 	//loading label
 	private JLabel loading;
 	
+	//shows how far along the running tasks are
+	private JLabel status;
+	
+	//the background tasks that were started last, so the analysis can wait for the loads and all of them can be cancelled
+	private Task orgTask;
+	private Task callTask;
+	private Task analysisTask;
+	
+	//the least time between progress updates, in milliseconds
+	private static final long PROGRESS_INTERVAL = 200;
+	
 	//file chooser
 	JFileChooser fileChooser;
 	
@@ -124,12 +145,8 @@ public class AnalyticsFrame extends JFrame implements ActionListener {
 		initMenu.setLayout(new BoxLayout(initMenu, BoxLayout.Y_AXIS));
 		initOrg = makeLink("Load Mission Organization");
 		initMenu.add(initOrg);
-		initMenu.add(makeSmallHeader("Enter Year of Calls (yyyy format):"));
-		year = makeTextField(4);
-		initMenu.add(year);
-		initMenu.add(makeSmallHeader("Enter Month of Calls (mm format):"));
-		month = makeTextField(2);
-		initMenu.add(month);
+		initRules = makeLink("Load Rules (optional)");
+		initMenu.add(initRules);
 		initMenu.add(makeSmallHeader("Enter Date of Last Move Day (yyyy/mm/dd format):"));
 		transferDate = makeTextField(10);
 		initMenu.add(transferDate);
@@ -140,9 +157,22 @@ public class AnalyticsFrame extends JFrame implements ActionListener {
 		
 		//display the 'run analytics' menu
 		menu.add(makeHeader("Analytics"));
+		menu.add(makeSmallHeader("First Month to Analyze (yyyy/mm format, blank for the oldest):"));
+		firstMonth = makeTextField(7);
+		menu.add(firstMonth);
+		menu.add(makeSmallHeader("Last Month to Analyze (yyyy/mm format, blank for the newest):"));
+		lastMonth = makeTextField(7);
+		menu.add(lastMonth);
 		runAnalysis = makeLink("Run Phone Analytics");
 		menu.add(runAnalysis);
 		
+		//display the progress of whatever is running, and a way to stop it
+		status = makeSmallHeader("");
+		menu.add(status);
+		cancel = makeLink("Cancel");
+		cancel.setVisible(false);
+		menu.add(cancel);
+		
 		//create a FileChooser to be used to choose files for mission organization and calls
 		fileChooser = new JFileChooser();
 		
@@ -162,7 +192,7 @@ public class AnalyticsFrame extends JFrame implements ActionListener {
 		loading = new JLabel("", loadingIcon, JLabel.CENTER);
 		loading.setVisible(false);
 		content.add(loading, BorderLayout.CENTER); 
-
+		
 		//display the page
 		setVisible(true);
 	}
@@ -171,7 +201,16 @@ public class AnalyticsFrame extends JFrame implements ActionListener {
 	 * Sets the text of the error message
 	 * PARAMETER: String text - the text to put into the error message
 	 * */
-	public void setError(String text) {
+	public void setError(final String text) {
+		//this can be called from the background tasks, so make sure the label is changed on the event thread
+		if (!SwingUtilities.isEventDispatchThread()) {
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					setError(text);
+				}
+			});
+			return;
+		}
 		error.setText("<html><p>" + text + "</p></html>");
 	}
 	
@@ -237,7 +276,7 @@ public class AnalyticsFrame extends JFrame implements ActionListener {
 			public void mouseClicked(MouseEvent e) {}
 			public void mousePressed(MouseEvent e) {}
 			public void mouseReleased(MouseEvent e) {}
-
+			
 			//code for the onHover
 			public void mouseEntered(MouseEvent e) {
 				JButton button = (JButton) e.getSource();
@@ -257,73 +296,262 @@ public class AnalyticsFrame extends JFrame implements ActionListener {
 				
 		return link;
 	}
-
-	public void actionPerformed(final ActionEvent e) {
+	
+	public void actionPerformed(ActionEvent e) {
+		Object source = e.getSource();
+		
+		//stop everything that's running
+		if (source.equals(cancel)) {
+			cancelTask(orgTask);
+			cancelTask(callTask);
+			cancelTask(analysisTask);
+			return;
+		}
 		
-		loading.setVisible(true);
 		setError("");
 		
-		//create a new thread to handle the action so that we can still show the loading image
-		new Thread() {  
-	        public void run() { 
-	        	Object source = e.getSource();
-
-	        	//take different actions based on which button was the one that got clicked
-	        	if (source.equals(initOrg)) {
-	        		int returnVal = fileChooser.showOpenDialog(AnalyticsFrame.this);
-
-	                if (returnVal == JFileChooser.APPROVE_OPTION) {
-	                	File file = fileChooser.getSelectedFile();
-	                	if (analytics.initOrganization(file.getAbsolutePath()))
-	                		((JButton) source).setText("Mission Organization...Loaded");
-	                	else
-	                		((JButton) source).setText("Mission Organization...Failed");
-	                }
-	        	}
-	        	else if (source.equals(initCalls)) {
-	        		String yearText = year.getText();
-	        		String monthText = month.getText();
-	        		String transferText = transferDate.getText();
-	        		
-	        		//do simple tests for length of the strings
-	        		if (yearText == null || yearText.length() != 4) {
-	        			setError("Please enter the year in 'yyyy' format.");
-	        			loading.setVisible(false);
-	        			return;
-	        		}
-	        		if (monthText == null || monthText.length() != 2) {
-	        			setError("Please enter the month in 'mm' format.");
-	        			loading.setVisible(false);
-	        			return;
-	        		}
-	        		if (transferText == null || transferText.length() != 10) {
-	        			setError("Please enter the transfer date in 'yyyy/mm/dd' format.");
-	        			loading.setVisible(false);
-	        			return;
-	        		}
-	        		
-	        		int returnVal = fileChooser.showOpenDialog(AnalyticsFrame.this);
-
-	               if (returnVal == JFileChooser.APPROVE_OPTION) {
-	                	File file = fileChooser.getSelectedFile();
-	                	
-	                	if (analytics.initCallList(file.getAbsolutePath(), yearText, monthText, transferText))
-	                		((JButton) source).setText("Call List...Loaded");
-	                	else
-	                		((JButton) source).setText("Call List...Failed");
-	                }
-	        	}
-	        	else if (source.equals(runAnalysis)) {
-	        		if (analytics.runAnalysis())
-						((JButton) source).setText("Run Analysis...Complete");
-					else 
-						((JButton) source).setText("Run Analysis...Failed");
-	        	}
-
-	        	loading.setVisible(false); 
-	        }  
-	    }.start();  
+		//take different actions based on which button was the one that got clicked
+		if (source.equals(initOrg)) {
+			if (isRunning(orgTask))
+				return;
+			
+			int returnVal = fileChooser.showOpenDialog(this);
+			if (returnVal == JFileChooser.APPROVE_OPTION) {
+				final File file = fileChooser.getSelectedFile();
+				orgTask = new Task(initOrg, "Mission Organization", "Loaded", "") {
+					protected boolean work() {
+						return analytics.initOrganization(file.getAbsolutePath());
+					}
+				};
+				startTask(orgTask);
+			}
+		}
+		else if (source.equals(initRules)) {
+			//the rules file is small, so it is read straight away, the analysis uses whichever rules were loaded last
+			int returnVal = fileChooser.showOpenDialog(this);
+			if (returnVal == JFileChooser.APPROVE_OPTION) {
+				boolean worked = analytics.initRules(fileChooser.getSelectedFile().getAbsolutePath());
+				initRules.setText("Rules..." + (worked ? "Loaded" : "Failed"));
+			}
+		}
+		else if (source.equals(initCalls)) {
+			if (isRunning(callTask))
+				return;
+			
+			final String transferText = transferDate.getText();
+			
+			//do simple tests for length of the strings
+			if (transferText == null || transferText.length() != 10) {
+				setError("Please enter the transfer date in 'yyyy/mm/dd' format.");
+				return;
+			}
+			
+			//a month can be split over several exports, they can all be chosen at once
+			fileChooser.setMultiSelectionEnabled(true);
+			int returnVal = fileChooser.showOpenDialog(this);
+			fileChooser.setMultiSelectionEnabled(false);
+			if (returnVal == JFileChooser.APPROVE_OPTION) {
+				File[] files = fileChooser.getSelectedFiles();
+				final List<String> fileNames = new ArrayList<String>(files.length);
+				for (int i = 0; i < files.length; i++)
+					fileNames.add(files[i].getAbsolutePath());
+				callTask = new Task(initCalls, "Call List", "Loaded", "calls read") {
+					protected boolean work() {
+						return analytics.initCallList(fileNames, transferText, this);
+					}
+				};
+				startTask(callTask);
+			}
+		}
+		else if (source.equals(runAnalysis)) {
+			if (isRunning(analysisTask))
+				return;
+			
+			//a blank month leaves that end of the range open
+			final String firstText = getMonthText(firstMonth);
+			final String lastText = getMonthText(lastMonth);
+			if ((firstText != null && firstText.length() != 7) || (lastText != null && lastText.length() != 7)) {
+				setError("Please enter the months in 'yyyy/mm' format.");
+				return;
+			}
+			
+			//the loads might still be running, the analysis waits for them to finish first, a load that
+			//failed or was cancelled counts as not loaded
+			final Task org = orgTask;
+			final Task callList = callTask;
+			analysisTask = new Task(runAnalysis, "Run Analysis", "Complete", "calls checked") {
+				protected boolean work() throws Exception {
+					if (org != null && !org.waitFor())
+						return false;
+					if (callList != null && !callList.waitFor())
+						return false;
+					return analytics.runAnalysis(PhoneAnalytics.RESULTS_FILE, firstText, lastText, this);
+				}
+			};
+			startTask(analysisTask);
+		}
+	}
+	
+	/*
+	 * Gets a month typed into a text field
+	 * PARAMETER: JTextField field - the text field
+	 * RETURN VALUE: String - the month, null if the field is blank
+	 * */
+	private String getMonthText(JTextField field) {
+		String text = field.getText();
+		if (text == null || text.trim().length() == 0)
+			return null;
+		return text.trim();
+	}
+	
+	/*
+	 * Starts a background task, showing the loading image and cancel link while it runs
+	 * PARAMETER: Task task - the task to start
+	 * */
+	private void startTask(Task task) {
+		loading.setVisible(true);
+		cancel.setVisible(true);
+		task.execute();
+	}
+	
+	/*
+	 * Determines whether a background task is still running. A cancelled task is still running until its work
+	 * has actually stopped.
+	 * PARAMETER: Task task - the task, can be null
+	 * RETURN VALUE: boolean - true = running, false = finished or never started
+	 * */
+	private boolean isRunning(Task task) {
+		return task != null && task.running;
+	}
+	
+	/*
+	 * Cancels a background task if it is still running. The task stops the next time it checks for it, work
+	 * that doesn't check, like loading the mission organization, finishes anyway.
+	 * PARAMETER: Task task - the task, can be null
+	 * */
+	private void cancelTask(Task task) {
+		if (isRunning(task))
+			task.cancel(false);
+	}
+	
+	/*
+	 * This nested class runs one of the buttons' actions in the background. It reports progress back to the
+	 * GUI no more often than PROGRESS_INTERVAL, and sets the button's text once the work has finished.
+	 * Cancelling the task makes SwingWorker call it done straight away, so the task keeps track of when its
+	 * work has really finished itself.
+	 * */
+	private abstract class Task extends SwingWorker<Boolean, String> implements ProgressListener {
+		private JButton button;
+		private String name;//the start of the button's text
+		private String success;//shown after the name when the task works
+		private String unit;//what the progress counts
+		private long lastUpdate;//when progress was last reported, in milliseconds
+		private volatile boolean running;//true from when the task is made until its work has finished
+		private volatile boolean worked;//whether the work succeeded, once it has finished
+		private CountDownLatch finished;//opened once the work has finished
+		private AtomicBoolean started;//set by whichever comes first, the work starting or the task being cancelled before it does
 		
+		public Task(JButton button, String name, String success, String unit) {
+			this.button = button;
+			this.name = name;
+			this.success = success;
+			this.unit = unit;
+			lastUpdate = 0;
+			running = true;
+			worked = false;
+			finished = new CountDownLatch(1);
+			started = new AtomicBoolean(false);
+		}
+		
+		/*
+		 * Does the work of the task
+		 * RETURN VALUE: boolean - true = the work succeeded, false = it failed
+		 * */
+		protected abstract boolean work() throws Exception;
+		
+		protected Boolean doInBackground() {
+			if (!started.compareAndSet(false, true))
+				return false;
+			
+			String result = "Failed";
+			try {
+				worked = work();
+				if (worked)
+					result = success;
+				else if (isCancelled())
+					result = "Cancelled";
+			}
+			catch (CancellationException e) {
+				result = "Cancelled";
+			}
+			catch (Exception e) {
+				e.printStackTrace();
+			}
+			finally {
+				running = false;
+				finished.countDown();
+				final String text = name + "..." + result;
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						finish(text);
+					}
+				});
+			}
+			return worked;
+		}
+		
+		/*
+		 * Called on the GUI's thread as soon as the task is cancelled, which is usually before the work has
+		 * stopped. Only a task cancelled before its work started is finished here, the work finishes the rest.
+		 * */
+		protected void done() {
+			if (isCancelled() && started.compareAndSet(false, true)) {
+				running = false;
+				finished.countDown();
+				finish(name + "...Cancelled");
+			}
+		}
+		
+		/*
+		 * Waits for the work to finish, even if the task was cancelled, since some work can't be stopped part way
+		 * RETURN VALUE: boolean - true = the work succeeded, false = it failed or stopped because it was cancelled
+		 * THROWS: InterruptedException if the thread is interrupted while it waits
+		 * */
+		public boolean waitFor() throws InterruptedException {
+			finished.await();
+			return worked;
+		}
+		
+		/*Called by the work, possibly from several threads at once*/
+		public void progress(long count) {
+			long now = System.currentTimeMillis();
+			synchronized (this) {
+				if (now - lastUpdate < PROGRESS_INTERVAL)
+					return;
+				lastUpdate = now;
+			}
+			publish(name + ": " + count + " " + unit);
+		}
+		
+		protected void process(List<String> updates) {
+			if (running)
+				status.setText(updates.get(updates.size() - 1));
+		}
+		
+		/*
+		 * Shows how the work went, called on the GUI's thread once the work has finished
+		 * PARAMETER: String text - the button's new text
+		 * */
+		private void finish(String text) {
+			button.setText(text);
+			
+			//hide the loading image once nothing is running
+			if (!isRunning(orgTask) && !isRunning(callTask) && !isRunning(analysisTask)) {
+				loading.setVisible(false);
+				cancel.setVisible(false);
+				status.setText("");
+			}
+		}
 	}
 
 }
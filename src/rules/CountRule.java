@@ -0,0 +1,60 @@
+package rules;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import analytics.CallPartition;
+import analytics.MissionOrganization;
+import analytics.ViolationCounter;
+import excel.ExcelWriter;
+
+/*
+ * A rule whose results are the number of violations made by each companionship
+ * */
+
+public abstract class CountRule extends Rule {
+	
+	//the header used for the results of every counting rule
+	private static final String[] HEADER = {"Missionaries", "# of Violations"};
+	
+	//the number of violations made by each companionship, by area id
+	private ViolationCounter violators;
+	
+	protected CountRule(MissionOrganization mission, CallPartition calls, RuleSettings settings, String title) {
+		super(mission, calls, settings, title, HEADER);
+		violators = new ViolationCounter(mission.getAreaCount());
+	}
+	
+	public void check(int call) {
+		if (isViolation(call))
+			violators.add(getCallerArea(call));
+	}
+	
+	/*
+	 * Determines whether a call breaks the rule
+	 * PARAMETER: int call - the index of the call in the partition
+	 * RETURN VALUE: boolean - true = the call is a violation, false = it isn't
+	 * */
+	protected abstract boolean isViolation(int call);
+	
+	public void merge(Rule other) {
+		violators.addAll(((CountRule) other).violators);
+	}
+	
+	public void save(DataOutputStream out) throws IOException {
+		saveCounter(out, violators);
+	}
+	
+	public void load(DataInputStream in) throws IOException {
+		loadCounter(in, violators);
+	}
+	
+	public ViolationCounter getResults() {
+		return violators;
+	}
+	
+	protected void writeViolations(ExcelWriter writer) {
+		writer.addMap(violators, mission);
+	}
+}
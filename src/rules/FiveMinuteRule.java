@@ -0,0 +1,30 @@
+package rules;
+
+import analytics.CallPartition;
+import analytics.MissionOrganization;
+
+/*
+ * Checks for calls to investigators that are longer than 5 minutes, or however long the rule settings allow
+ * */
+
+public class FiveMinuteRule extends CountRule {
+	
+	public FiveMinuteRule(MissionOrganization mission, CallPartition calls, RuleSettings settings) {
+		super(mission, calls, settings, "Calls to Investigators over " + Math.round(settings.getInvestigatorDuration() / 60.0) + " Minutes");
+	}
+	
+	public Rule copy() {
+		return new FiveMinuteRule(mission, calls, settings);
+	}
+	
+	protected boolean isViolation(int call) {
+		if (calls.getDuration(call) <= settings.getInvestigatorDuration())
+			return false;
+		int caller = calls.getCallerId(call);
+		int receiver = calls.getReceiverId(call);
+		int exempt = settings.getExemptTypes();
+		
+		//if it's a missionary number, they have up to 9 minutes and if the caller or receiver is a special number, no limit
+		return !mission.isMissionaryNumber(receiver) && !(mission.isType(caller, exempt) || mission.isType(receiver, exempt));
+	}
+}
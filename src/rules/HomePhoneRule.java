@@ -0,0 +1,24 @@
+package rules;
+
+import analytics.CallPartition;
+import analytics.MissionOrganization;
+
+/*
+ * Checks for calls to home phones
+ * */
+
+public class HomePhoneRule extends CountRule {
+	
+	public HomePhoneRule(MissionOrganization mission, CallPartition calls, RuleSettings settings) {
+		super(mission, calls, settings, "Calls to Landlines");
+	}
+	
+	public Rule copy() {
+		return new HomePhoneRule(mission, calls, settings);
+	}
+	
+	protected boolean isViolation(int call) {
+		//check for home phones and make sure that the caller isn't a special number
+		return !calls.isCellPhone(calls.getReceiver(call)) && !mission.isType(calls.getCallerId(call), settings.getExemptTypes());
+	}
+}
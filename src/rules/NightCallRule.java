@@ -0,0 +1,26 @@
+package rules;
+
+import analytics.CallPartition;
+import analytics.MissionOrganization;
+
+/*
+ * Checks for calls between 10:30pm and 6:30am, or whatever night hours the rule settings have
+ * */
+
+public class NightCallRule extends CountRule {
+	
+	public NightCallRule(MissionOrganization mission, CallPartition calls, RuleSettings settings) {
+		super(mission, calls, settings, "Calls Made From " + RuleSettings.formatTime(settings.getNightStart()) + " to " +
+				RuleSettings.formatTime(settings.getNightEnd()));
+	}
+	
+	public Rule copy() {
+		return new NightCallRule(mission, calls, settings);
+	}
+	
+	protected boolean isViolation(int call) {
+		//check that the start time wasn't too early or the end time wasn't too late and that the caller wasn't a special number
+		return (calls.getStartMinute(call) < settings.getNightEnd() || calls.getEndMinute(call) > settings.getNightStart()) && 
+				!mission.isType(calls.getCallerId(call), settings.getExemptTypes());
+	}
+}
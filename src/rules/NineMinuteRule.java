@@ -0,0 +1,30 @@
+package rules;
+
+import analytics.CallPartition;
+import analytics.MissionOrganization;
+
+/*
+ * Checks for calls to other missionaries that are over 9 minutes, or however long the rule settings allow
+ * */
+
+public class NineMinuteRule extends CountRule {
+	
+	public NineMinuteRule(MissionOrganization mission, CallPartition calls, RuleSettings settings) {
+		super(mission, calls, settings, "Calls to Missionaries over " + Math.round(settings.getMissionaryDuration() / 60.0) + " Minutes");
+	}
+	
+	public Rule copy() {
+		return new NineMinuteRule(mission, calls, settings);
+	}
+	
+	protected boolean isViolation(int call) {
+		if (calls.getDuration(call) <= settings.getMissionaryDuration())
+			return false;
+		int caller = calls.getCallerId(call);
+		int receiver = calls.getReceiverId(call);
+		int exempt = settings.getExemptTypes();
+		
+		//make sure the caller or receiver is not a special number or a non missionary (which is caught in over 5 minutes)
+		return mission.isMissionaryNumber(receiver) && !(mission.isType(caller, exempt) || mission.isType(receiver, exempt));
+	}
+}
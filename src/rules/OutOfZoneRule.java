@@ -0,0 +1,176 @@
+package rules;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import analytics.CallPartition;
+import analytics.MissionOrganization;
+import analytics.ViolationCounter;
+import excel.ExcelWriter;
+
+/*
+ * Checks for calls where missionaries call missionaries outside of their zone. The calls are counted in a
+ * matrix of every area against every other area, so the memory used doesn't grow with the number of calls.
+ * The results are the counts from each zone to each other zone, followed by each pair of areas that called
+ * outside their zone. Every call is only listed as well if the rule settings ask for it, and then the calls
+ * are checked again as they're written, so the list is never kept in memory.
+ * */
+
+public class OutOfZoneRule extends Rule {
+	
+	private static final String[] DETAIL_HEADER = {"Caller", "Receiver", "Date (mm/yy)"};
+	private static final String[] AREA_HEADER = {"Caller", "Receiver", "# of Calls"};
+	
+	private int areaCount;
+	
+	//the calls from area a to area b are counted at a * areaCount + b, null until the first call outside the zone
+	private int[] areaCalls;
+	
+	public OutOfZoneRule(MissionOrganization mission, CallPartition calls, RuleSettings settings) {
+		super(mission, calls, settings, "Calls outside of the Zone", getZoneHeader(mission));
+		areaCount = mission.getAreaCount();
+		areaCalls = null;
+	}
+	
+	/*
+	 * Makes the header of the zone counts, a column for each zone the calls went to
+	 * PARAMETER: MissionOrganization mission - the mission the zones are in
+	 * RETURN VALUE: String[] - the header
+	 * */
+	private static String[] getZoneHeader(MissionOrganization mission) {
+		String[] header = new String[mission.getZoneCount() + 1];
+		header[0] = "Caller's Zone";
+		for (int zone = 0; zone < mission.getZoneCount(); zone++)
+			header[zone + 1] = mission.getZoneName(zone);
+		return header;
+	}
+	
+	public void check(int call) {
+		int pair = getAreaPair(call);
+		if (pair < 0)
+			return;
+		
+		if (areaCalls == null)
+			areaCalls = new int[areaCount * areaCount];
+		areaCalls[pair]++;
+	}
+	
+	/*
+	 * Finds out if a call went outside of the caller's zone
+	 * PARAMETER: int call - the index of the call
+	 * RETURN VALUE: int - where the call is counted in the matrix (caller's area * areaCount + receiver's area),
+	 * 	-1 if it didn't go outside the zone or isn't checked
+	 * THROWS: IllegalArgumentException if a number that isn't a missionary's called a missionary
+	 * */
+	private int getAreaPair(int call) {
+		int caller = calls.getCallerId(call);
+		int receiver = calls.getReceiverId(call);
+		int exempt = settings.getExemptTypes();
+		
+		//only do the check if the receiver is a missionary and neither the caller nor the receiver is exempt
+		int receiverArea = mission.getAreaId(receiver);
+		if (receiverArea < 0 || mission.isType(caller, exempt) || mission.isType(receiver, exempt))
+			return -1;
+		int callerArea = mission.getAreaId(caller);
+		if (callerArea < 0)
+			throw new IllegalArgumentException("A call to a missionary was made from a number that is not a missionary number: " +
+					calls.getCaller(call));
+		if (mission.getZone(callerArea) == mission.getZone(receiverArea))
+			return -1;
+		return callerArea * areaCount + receiverArea;
+	}
+	
+	public Rule copy() {
+		return new OutOfZoneRule(mission, calls, settings);
+	}
+	
+	public void merge(Rule other) {
+		OutOfZoneRule rule = (OutOfZoneRule) other;
+		if (rule.areaCalls != null) {
+			if (areaCalls == null)
+				areaCalls = new int[areaCount * areaCount];
+			for (int i = 0; i < areaCalls.length; i++)
+				areaCalls[i] += rule.areaCalls[i];
+		}
+	}
+	
+	public void save(DataOutputStream out) throws IOException {
+		//the areas are saved by phone number, area ids depend on the order the organization file was read in
+		int used = 0;
+		for (int i = 0; areaCalls != null && i < areaCalls.length; i++) {
+			if (areaCalls[i] != 0)
+				used++;
+		}
+		out.writeInt(used);
+		for (int i = 0; used > 0 && i < areaCalls.length; i++) {
+			if (areaCalls[i] != 0) {
+				out.writeUTF(mission.getAreaPhone(i / areaCount));
+				out.writeUTF(mission.getAreaPhone(i % areaCount));
+				out.writeInt(areaCalls[i]);
+			}
+		}
+	}
+	
+	public void load(DataInputStream in) throws IOException {
+		int used = in.readInt();
+		if (used > 0 && areaCalls == null)
+			areaCalls = new int[areaCount * areaCount];
+		for (int i = 0; i < used; i++) {
+			int callerArea = findArea(in.readUTF());
+			int receiverArea = findArea(in.readUTF());
+			areaCalls[callerArea * areaCount + receiverArea] += in.readInt();
+		}
+	}
+	
+	/*
+	 * Returns the number of calls each area made outside of its zone
+	 * */
+	public ViolationCounter getResults() {
+		ViolationCounter results = new ViolationCounter(areaCount);
+		for (int i = 0; areaCalls != null && i < areaCalls.length; i++)
+			results.add(i / areaCount, areaCalls[i]);
+		return results;
+	}
+	
+	protected void writeViolations(ExcelWriter writer) {
+		//add the areas' counts up into their zones
+		int zoneCount = mission.getZoneCount();
+		long[] zoneCalls = new long[zoneCount * zoneCount];
+		for (int i = 0; areaCalls != null && i < areaCalls.length; i++)
+			zoneCalls[mission.getZone(i / areaCount) * zoneCount + mission.getZone(i % areaCount)] += areaCalls[i];
+		
+		//a row for each zone that called outside of itself
+		for (int from = 0; from < zoneCount; from++) {
+			double[] row = new double[zoneCount];
+			long total = 0;
+			for (int to = 0; to < zoneCount; to++) {
+				row[to] = zoneCalls[from * zoneCount + to];
+				total += zoneCalls[from * zoneCount + to];
+			}
+			if (total > 0)
+				writer.addRow(new String[] {mission.getZoneName(from)}, row);
+		}
+		
+		//then each pair of areas that called outside their zone
+		writer.addTitle("Calls outside of the Zone by Area");
+		writer.addHeader(AREA_HEADER);
+		for (int i = 0; areaCalls != null && i < areaCalls.length; i++) {
+			if (areaCalls[i] != 0)
+				writer.addRow(new String[] {mission.getAreaName(i / areaCount), mission.getAreaName(i % areaCount)},
+						new double[] {areaCalls[i]});
+		}
+		
+		//every call is found again from the month's calls and written out as it's found
+		if (!settings.isOutOfZoneDetail())
+			return;
+		writer.addTitle("Each Call outside of the Zone");
+		writer.addHeader(DETAIL_HEADER);
+		for (int call = 0; call < calls.size(); call++) {
+			if (getAreaPair(call) < 0)
+				continue;
+			writer.addRow(new String[] {mission.getAreaString(calls.getCallerId(call)), mission.getAreaString(calls.getReceiverId(call)),
+					calls.getMonth() + "/" + String.format("%02d", calls.getDay(call))}, new double[0]);
+		}
+	}
+}
@@ -0,0 +1,40 @@
+package rules;
+
+import analytics.CallPartition;
+import analytics.MissionOrganization;
+
+/*
+ * Checks for calls to missionaries other than the zone leaders between 10:30am and 9:00pm
+ * Leaves out weekly planning session
+ * The hours, planning session and who counts as a zone leader come from the rule settings
+ * */
+
+public class ProselytingHoursRule extends CountRule {
+	
+	public ProselytingHoursRule(MissionOrganization mission, CallPartition calls, RuleSettings settings) {
+		super(mission, calls, settings, "Calls to Other Missionaries during Proselyting Hours");
+	}
+	
+	public Rule copy() {
+		return new ProselytingHoursRule(mission, calls, settings);
+	}
+	
+	protected boolean isViolation(int call) {
+		int caller = calls.getCallerId(call);
+		int receiver = calls.getReceiverId(call);
+		int exempt = settings.getExemptTypes();
+		int leaders = settings.getProselytingExemptTypes();
+		
+		//go through all the conditions of being a violator
+		return mission.isMissionaryNumber(receiver) && //called a missionary 
+				!mission.isType(caller, exempt) && //not a special number
+				!mission.isType(receiver, exempt) && //didn't call special number
+				//not calling the zone leader or the zone leader calling them
+				!(mission.isSameZone(caller, receiver) 
+						&& (mission.isType(caller, leaders) || mission.isType(receiver, leaders))) &&
+				//calling during proselyting hours
+				(calls.getStartMinute(call) > settings.getProselytingStart() || calls.getEndMinute(call) < settings.getProselytingEnd()) &&
+				//exclude planning session
+				!calls.duringPlanningSession(call, settings.getPlanningDay(), settings.getTransferPlanningDay(), settings.getPlanningEnd());
+	}
+}
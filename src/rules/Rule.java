@@ -0,0 +1,193 @@
+package rules;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import analytics.CallPartition;
+import analytics.MissionOrganization;
+import analytics.ResultsStore;
+import analytics.ViolationCounter;
+import excel.ExcelWriter;
+
+/*
+ * A single mission rule that calls are checked against. The RuleEngine hands every call to every rule
+ * in one pass over a month of calls, and each rule keeps track of its own violations. When the calls are
+ * checked in parallel, each part of the month is checked by its own copy of the rule and the copies
+ * are merged together afterwards.
+ * */
+
+public abstract class Rule {
+	
+	protected MissionOrganization mission;
+	protected CallPartition calls;
+	protected RuleSettings settings;
+	
+	//the title and header of the rule's section in the results
+	private String title;
+	private String[] header;
+	
+	/*
+	 * Constructor
+	 * PARAMETER: MissionOrganization mission - the mission the calls belong to
+	 * PARAMETER: CallPartition calls - the month of calls that will be checked
+	 * PARAMETER: RuleSettings settings - the times, limits and exemptions to check the calls against
+	 * PARAMETER: String title - the title of the rule's section in the results
+	 * PARAMETER: String[] header - the column headers of the rule's section in the results
+	 * */
+	protected Rule(MissionOrganization mission, CallPartition calls, RuleSettings settings, String title, String[] header) {
+		this.mission = mission;
+		this.calls = calls;
+		this.settings = settings;
+		this.title = title;
+		this.header = header;
+	}
+	
+	/*
+	 * Checks one call against the rule, recording it if it's a violation
+	 * PARAMETER: int call - the index of the call in the partition
+	 * THROWS: IllegalArgumentException if the call involves a number the mission organization doesn't know about
+	 * */
+	public abstract void check(int call);
+	
+	/*
+	 * Creates a new rule of the same kind with no violations recorded yet, used to check part of the
+	 * month on its own thread
+	 * RETURN VALUE: Rule - the empty copy
+	 * */
+	public abstract Rule copy();
+	
+	/*
+	 * Adds the violations recorded by a copy of this rule onto this rule's violations. Copies that checked
+	 * later calls must be merged after copies that checked earlier calls.
+	 * PARAMETER: Rule other - a copy of this rule
+	 * */
+	public abstract void merge(Rule other);
+	
+	/*
+	 * Writes what the rule has recorded so far, so a later analysis of the same month can carry on from it
+	 * instead of checking the calls again
+	 * PARAMETER: DataOutputStream out - where to write it
+	 * */
+	public abstract void save(DataOutputStream out) throws IOException;
+	
+	/*
+	 * Reads back what save() wrote, adding it onto what the rule has recorded
+	 * PARAMETER: DataInputStream in - where to read it from
+	 * THROWS: IOException if the saved data is damaged or has a phone number the calls don't have
+	 * */
+	public abstract void load(DataInputStream in) throws IOException;
+	
+	/*
+	 * Finds the area of the companionship that made a call
+	 * PARAMETER: int call - the index of the call in the partition
+	 * RETURN VALUE: int - the area id
+	 * THROWS: IllegalArgumentException if the call wasn't made from a missionary number
+	 * */
+	protected int getCallerArea(int call) {
+		int area = mission.getAreaId(calls.getCallerId(call));
+		if (area < 0)
+			throw new IllegalArgumentException("A call was made from a number that is not a missionary number: " + calls.getCaller(call));
+		return area;
+	}
+	
+	/*
+	 * Writes the non zero counts of a counter keyed by area id, by the area's phone number since area ids
+	 * depend on the order the organization file was read in
+	 * PARAMETER: DataOutputStream out - where to write the counts
+	 * PARAMETER: ViolationCounter counter - the counts
+	 * */
+	protected void saveCounter(DataOutputStream out, ViolationCounter counter) throws IOException {
+		int used = 0;
+		for (int area = 0; area < counter.size(); area++) {
+			if (counter.get(area) != 0)
+				used++;
+		}
+		
+		out.writeInt(used);
+		for (int area = 0; area < counter.size(); area++) {
+			if (counter.get(area) != 0) {
+				out.writeUTF(mission.getAreaPhone(area));
+				out.writeLong(counter.get(area));
+			}
+		}
+	}
+	
+	/*
+	 * Reads counts written by saveCounter() and adds them onto a counter
+	 * PARAMETER: DataInputStream in - where to read the counts from
+	 * PARAMETER: ViolationCounter counter - the counter to add them to
+	 * THROWS: IOException if a phone number isn't an area's
+	 * */
+	protected void loadCounter(DataInputStream in, ViolationCounter counter) throws IOException {
+		int used = in.readInt();
+		for (int i = 0; i < used; i++) {
+			int area = findArea(in.readUTF());
+			counter.add(area, in.readLong());
+		}
+	}
+	
+	/*
+	 * Looks up the area of a saved phone number
+	 * PARAMETER: String phone - the phone number
+	 * RETURN VALUE: int - the area id
+	 * THROWS: IOException if the phone number isn't an area's
+	 * */
+	protected int findArea(String phone) throws IOException {
+		int area = mission.getAreaId(calls.findPhoneId(phone));
+		if (area < 0)
+			throw new IOException("Unknown area in the saved analysis: " + phone);
+		return area;
+	}
+	
+	/*
+	 * Returns the times, limits and exemptions the rule checks calls against
+	 * */
+	public RuleSettings getSettings() {
+		return settings;
+	}
+	
+	/*
+	 * Returns the number the rule's results show for each companionship, so the results of each month can be
+	 * kept and compared with later months
+	 * RETURN VALUE: ViolationCounter - the numbers, keyed by the companionship's area id, only up to date once
+	 * 	finish() has been called
+	 * */
+	public abstract ViolationCounter getResults();
+	
+	/*
+	 * Adds the rule's results to a month of results to be kept, by the phone number of each companionship
+	 * PARAMETER: ResultsStore.Month month - the month's results, the rule goes in under its class name
+	 * */
+	public void addResults(ResultsStore.Month month) {
+		String name = getClass().getSimpleName();
+		ViolationCounter results = getResults();
+		for (int area = 0; area < results.size(); area++) {
+			if (results.get(area) != 0)
+				month.add(name, calls.getPhone(calls.findPhoneId(mission.getAreaPhone(area))), results.get(area));
+		}
+	}
+	
+	/*
+	 * Called once every call has been checked, for rules that can only decide on violations at the end.
+	 * It can be called again after more calls have been checked.
+	 * */
+	public void finish() {
+	}
+	
+	/*
+	 * Writes the rule's section of the results
+	 * PARAMETER: ExcelWriter writer - the writer to add the section to
+	 * */
+	public void write(ExcelWriter writer) {
+		writer.addTitle(title);
+		writer.addHeader(header);
+		writeViolations(writer);
+	}
+	
+	/*
+	 * Writes the rows of violations under the rule's header
+	 * PARAMETER: ExcelWriter writer - the writer to add the rows to
+	 * */
+	protected abstract void writeViolations(ExcelWriter writer);
+}
@@ -0,0 +1,529 @@
+package rules;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import analytics.AnalyticsMetrics;
+import analytics.CallPartition;
+import analytics.PhaseStats;
+import analytics.ProgressListener;
+import analytics.ResultsStore;
+import excel.ExcelWriter;
+
+/*
+ * Checks a month of calls against a set of rules. Every rule sees each call during a single pass over the
+ * month, so adding a rule doesn't add another pass. The pass can also be split into a few ranges of calls
+ * per core, each checked with its own copy of the rules on a pool shared by every engine, and merged back
+ * together in order. What the rules have recorded can
+ * be saved and loaded again later, so a longer export of the same month only has its new calls checked.
+ * */
+
+public class RuleEngine {
+	
+	//ranges of calls this small aren't split up any more
+	private static final int RANGE_SIZE = 16384;
+	
+	//the number of ranges the calls are split into for each core, so a core that finishes early can take another
+	private static final int RANGES_PER_CORE = 4;
+	
+	//when the rules are measured, one block of calls in this many is checked one rule at a time to time each rule
+	private static final int SAMPLE_INTERVAL = 16;
+	
+	//identifies a file of saved analysis
+	private static final int MAGIC = 0x50415354;//"PAST"
+	private static final int VERSION = 4;
+	
+	private CallPartition calls;
+	private List<Rule> rules;
+	
+	//the calls before this index have already been checked, by an earlier run if the analysis was loaded
+	private int checked;
+	
+	//where the time and memory used by each rule is recorded, null = don't measure the rules
+	private AnalyticsMetrics metrics;
+	
+	//while a run is being measured, the numbers of each rule and the time each rule has taken in the run
+	private PhaseStats[] ruleStats;
+	private AtomicLongArray ruleNanos;
+	
+	//while a run is being measured, the time, memory and calls of checking with every rule at once, and the time
+	//and memory each rule took in the sampled blocks, which the rest is shared out by
+	private AtomicLong checkNanos;
+	private AtomicLong checkBytes;
+	private AtomicLong checkCalls;
+	private AtomicLong checkBlocks;
+	private AtomicLongArray sampleNanos;
+	private AtomicLongArray sampleBytes;
+	
+	public RuleEngine(CallPartition calls) {
+		this.calls = calls;
+		rules = new ArrayList<Rule>();
+		checked = 0;
+		metrics = null;
+	}
+	
+	/*
+	 * Turns on measuring how long each rule takes and how much memory it allocates
+	 * PARAMETER: AnalyticsMetrics metrics - where to record it, null = don't measure the rules
+	 * */
+	public void setMetrics(AnalyticsMetrics metrics) {
+		this.metrics = metrics;
+	}
+	
+	/*
+	 * Returns the month of calls the rules are checked against
+	 * */
+	public CallPartition getCalls() {
+		return calls;
+	}
+	
+	/*
+	 * Adds a rule to be checked, the results are written in the order the rules are added
+	 * PARAMETER: Rule rule - the rule to add
+	 * */
+	public void addRule(Rule rule) {
+		rules.add(rule);
+	}
+	
+	/*
+	 * Returns the number of calls that have been checked, including the ones checked by an earlier run
+	 * if the analysis was loaded
+	 * */
+	public int getChecked() {
+		return checked;
+	}
+	
+	/*
+	 * Checks every call that hasn't been checked yet against every rule
+	 * THROWS: IllegalArgumentException if a rule can't check a call
+	 * */
+	public void run() {
+		Rule[] ruleArray = rules.toArray(new Rule[rules.size()]);
+		
+		startMeasuring();
+		check(ruleArray, checked, calls.size());
+		checked = calls.size();
+		
+		for (int j = 0; j < ruleArray.length; j++)
+			finish(j);
+		stopMeasuring();
+	}
+	
+	/*
+	 * Checks every call that hasn't been checked yet against every rule, splitting the calls up across all
+	 * the available cores. The results are the same as run().
+	 * THROWS: IllegalArgumentException if a rule can't check a call
+	 * */
+	public void runParallel() {
+		runParallel(null);
+	}
+	
+	/*
+	 * Checks every call that hasn't been checked yet against every rule, splitting the calls up across all
+	 * the available cores. The results are the same as run().
+	 * PARAMETER: ProgressListener progress - told how many calls have been checked, can be null
+	 * THROWS: IllegalArgumentException if a rule can't check a call
+	 * THROWS: CancellationException if the progress listener cancels the analysis
+	 * */
+	public void runParallel(ProgressListener progress) {
+		int from = checked;
+		int to = calls.size();
+		int ranges = Math.min(Runtime.getRuntime().availableProcessors() * RANGES_PER_CORE,
+				(to - from + RANGE_SIZE - 1) / RANGE_SIZE);
+		
+		//too few calls to be worth splitting up, they're checked with the rules themselves
+		if (ranges <= 1) {
+			if (progress != null && progress.isCancelled())
+				throw new CancellationException();
+			run();
+			if (progress != null)
+				progress.progress(to - from);
+			return;
+		}
+		
+		//hand each range to the shared pool, in order
+		AtomicLong done = new AtomicLong();
+		List<RangeTask> tasks = new ArrayList<RangeTask>(ranges);
+		startMeasuring();
+		try {
+			for (int k = 0; k < ranges; k++) {
+				RangeTask task = new RangeTask(from + (int) ((long) (to - from) * k / ranges),
+						from + (int) ((long) (to - from) * (k + 1) / ranges), progress, done);
+				ForkJoinPool.commonPool().execute(task);
+				tasks.add(task);
+			}
+			
+			//merge each range's copies onto the rules in the order of the calls they checked
+			for (int k = 0; k < ranges; k++) {
+				Rule[] results = tasks.get(k).join();
+				for (int j = 0; j < rules.size(); j++)
+					rules.get(j).merge(results[j]);
+			}
+		}
+		catch (RuntimeException e) {
+			//the pool may wrap the exception thrown on the worker thread, pass the original one on
+			if (e.getCause() instanceof IllegalArgumentException)
+				throw (IllegalArgumentException) e.getCause();
+			throw e;
+		}
+		finally {
+			//nothing is waiting for the rest if a range failed or was cancelled
+			for (int k = 0; k < tasks.size(); k++)
+				tasks.get(k).cancel(false);
+		}
+		
+		for (int j = 0; j < rules.size(); j++)
+			finish(j);
+		checked = to;
+		stopMeasuring();
+	}
+	
+	/*
+	 * Checks every call in the partition against every rule, for when the partition only holds the latest
+	 * batch of calls and is cleared once they've been checked. What the rules record adds up across batches,
+	 * finishRules() has to be called once the last batch has been checked. An engine run this way can't be
+	 * saved, since the calls it checked are gone.
+	 * THROWS: IllegalArgumentException if a rule can't check a call
+	 * */
+	public void checkBatch() {
+		Rule[] ruleArray = rules.toArray(new Rule[rules.size()]);
+		
+		startMeasuring();
+		check(ruleArray, 0, calls.size());
+		checked += calls.size();
+		stopMeasuring();
+	}
+	
+	/*
+	 * Lets every rule finish up once the last batch has been checked by checkBatch()
+	 * */
+	public void finishRules() {
+		startMeasuring();
+		for (int j = 0; j < rules.size(); j++)
+			finish(j);
+		stopMeasuring();
+	}
+	
+	/*
+	 * Gets the numbers of each rule ready to be added to, if the rules are being measured
+	 * */
+	private void startMeasuring() {
+		if (metrics == null) {
+			ruleStats = null;
+			return;
+		}
+		
+		ruleStats = new PhaseStats[rules.size()];
+		for (int j = 0; j < ruleStats.length; j++)
+			ruleStats[j] = metrics.getPhase(AnalyticsMetrics.RULE, rules.get(j).getClass().getSimpleName());
+		ruleNanos = new AtomicLongArray(ruleStats.length);
+		checkNanos = new AtomicLong();
+		checkBytes = new AtomicLong();
+		checkCalls = new AtomicLong();
+		checkBlocks = new AtomicLong();
+		sampleNanos = new AtomicLongArray(ruleStats.length);
+		sampleBytes = new AtomicLongArray(ruleStats.length);
+	}
+	
+	/*
+	 * Counts the run that just finished for each rule, if the rules are being measured
+	 * */
+	private void stopMeasuring() {
+		if (ruleStats == null)
+			return;
+		
+		//share the time and memory of checking the calls out between the rules by what they took in the samples
+		long calls = checkCalls.get();
+		for (int j = 0; j < ruleStats.length; j++) {
+			if (calls > 0) {
+				long nanos = share(checkNanos.get(), sampleNanos, j);
+				long bytes = checkBytes.get() < 0 ? -1 : share(checkBytes.get(), sampleBytes, j);
+				ruleStats[j].add(nanos, bytes, calls);
+				ruleNanos.addAndGet(j, nanos);
+			}
+			ruleStats[j].addRun(ruleNanos.get(j));
+		}
+		ruleStats = null;
+	}
+	
+	/*
+	 * Works out one rule's part of a total, in proportion to what each rule took in the sampled blocks
+	 * PARAMETER: long total - the total to share out
+	 * PARAMETER: AtomicLongArray samples - what each rule took in the sampled blocks
+	 * PARAMETER: int rule - the index of the rule
+	 * RETURN VALUE: long - the rule's part, an equal part if nothing was sampled
+	 * */
+	private static long share(long total, AtomicLongArray samples, int rule) {
+		long sum = 0;
+		for (int j = 0; j < samples.length(); j++)
+			sum += samples.get(j);
+		if (sum <= 0)
+			return total / samples.length();
+		return (long) ((double) total * samples.get(rule) / sum);
+	}
+	
+	/*
+	 * Lets a rule finish up once every call has been checked, measuring it if the rules are being measured
+	 * PARAMETER: int rule - the index of the rule
+	 * */
+	private void finish(int rule) {
+		if (ruleStats == null) {
+			rules.get(rule).finish();
+			return;
+		}
+		
+		long startNanos = System.nanoTime();
+		long startBytes = AnalyticsMetrics.getAllocatedBytes();
+		rules.get(rule).finish();
+		long nanos = System.nanoTime() - startNanos;
+		ruleStats[rule].add(nanos, AnalyticsMetrics.getAllocatedSince(startBytes), 0);
+		ruleNanos.addAndGet(rule, nanos);
+	}
+	
+	/*
+	 * Saves what the rules have recorded, along with how many calls have been checked, so a later run on a
+	 * longer export of the same month only has to check the calls added since. The file is written to a
+	 * temporary file first so a run that stops part way through never leaves a broken one behind.
+	 * PARAMETER: File file - the file to save to
+	 * PARAMETER: int missionChecksum - the checksum of the mission organization the calls were checked against
+	 * RETURN VALUE: boolean - true = saved, false = the file couldn't be written
+	 * */
+	public boolean save(File file, int missionChecksum) {
+		//the calls were checked in batches that are gone, so a later run couldn't line its calls up with them
+		if (checked > calls.size())
+			return false;
+		
+		File temp = new File(file.getPath() + ".tmp");
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				writeKey(out, missionChecksum);
+				
+				//the last call checked, so a later run can make sure its calls start with the same ones
+				out.writeInt(checked);
+				if (checked > 0) {
+					out.writeUTF(calls.getCaller(checked - 1));
+					out.writeUTF(calls.getReceiver(checked - 1));
+					out.writeInt(calls.getDay(checked - 1));
+					out.writeInt(calls.getStartMinute(checked - 1));
+					out.writeInt(calls.getDuration(checked - 1));
+				}
+				
+				for (int j = 0; j < rules.size(); j++)
+					rules.get(j).save(out);
+			}
+			finally {
+				out.close();
+			}
+			
+			file.delete();
+			if (temp.renameTo(file))
+				return true;
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+		}
+		temp.delete();
+		return false;
+	}
+	
+	/*
+	 * Loads analysis saved by save(), the calls it covers won't be checked again. It is only loaded if it was
+	 * saved with the same rules, rule settings, mission organization and transfer date, and the calls it
+	 * covers are the first calls of this month.
+	 * PARAMETER: File file - the file to load from
+	 * PARAMETER: int missionChecksum - the checksum of the mission organization the calls will be checked against
+	 * RETURN VALUE: boolean - true = loaded, false = there's no saved analysis that fits, and the engine
+	 * 	shouldn't be used since it may have been partly loaded
+	 * */
+	public boolean load(File file, int missionChecksum) {
+		if (!file.isFile())
+			return false;
+		
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try {
+				if (in.readInt() != MAGIC || in.readInt() != VERSION || !readKey(in, missionChecksum))
+					return false;
+				
+				int savedChecked = in.readInt();
+				if (savedChecked < 0 || savedChecked > calls.size())
+					return false;
+				if (savedChecked > 0) {
+					int last = savedChecked - 1;
+					if (!in.readUTF().equals(calls.getCaller(last)) || !in.readUTF().equals(calls.getReceiver(last)) ||
+							in.readInt() != calls.getDay(last) || in.readInt() != calls.getStartMinute(last) ||
+							in.readInt() != calls.getDuration(last))
+						return false;
+				}
+				
+				for (int j = 0; j < rules.size(); j++)
+					rules.get(j).load(in);
+				for (int j = 0; j < rules.size(); j++)
+					rules.get(j).finish();
+				checked = savedChecked;
+			}
+			finally {
+				in.close();
+			}
+		}
+		catch (IOException e) {
+			//damaged or out of date saved analysis is just ignored, all the calls will be checked instead
+			return false;
+		}
+		return true;
+	}
+	
+	/*
+	 * Writes what the saved analysis depends on, apart from the calls
+	 * PARAMETER: DataOutputStream out - where to write it
+	 * PARAMETER: int missionChecksum - the checksum of the mission organization
+	 * */
+	private void writeKey(DataOutputStream out, int missionChecksum) throws IOException {
+		out.writeInt(missionChecksum);
+		out.writeInt(calls.getLastWeekStart());
+		out.writeInt(rules.size());
+		for (int j = 0; j < rules.size(); j++) {
+			out.writeUTF(rules.get(j).getClass().getName());
+			out.writeInt(rules.get(j).getSettings().getChecksum());
+		}
+	}
+	
+	/*
+	 * Reads what writeKey() wrote and checks it against this engine
+	 * PARAMETER: DataInputStream in - where to read it from
+	 * PARAMETER: int missionChecksum - the checksum of the mission organization
+	 * RETURN VALUE: boolean - true = it matches, false = the saved analysis is for something else
+	 * */
+	private boolean readKey(DataInputStream in, int missionChecksum) throws IOException {
+		if (in.readInt() != missionChecksum || in.readInt() != calls.getLastWeekStart() || in.readInt() != rules.size())
+			return false;
+		for (int j = 0; j < rules.size(); j++) {
+			if (!in.readUTF().equals(rules.get(j).getClass().getName()) || in.readInt() != rules.get(j).getSettings().getChecksum())
+				return false;
+		}
+		return true;
+	}
+	
+	/*
+	 * Checks a range of calls against the rules
+	 * PARAMETER: Rule[] ruleArray - the rules to check
+	 * PARAMETER: int from - the index of the first call to check
+	 * PARAMETER: int to - the index after the last call to check
+	 * */
+	private void check(Rule[] ruleArray, int from, int to) {
+		if (ruleStats == null) {
+			checkCalls(ruleArray, from, to);
+			return;
+		}
+		
+		//the range is timed as a whole, reading the clock for each rule would cost more than most rules do. To
+		//tell the rules apart, one block in SAMPLE_INTERVAL goes through one rule at a time instead, each rule
+		//still sees the calls in order
+		long startNanos = System.nanoTime();
+		long startBytes = AnalyticsMetrics.getAllocatedBytes();
+		for (int start = from; start < to; start += RANGE_SIZE) {
+			int end = Math.min(to, start + RANGE_SIZE);
+			if (checkBlocks.getAndIncrement() % SAMPLE_INTERVAL != 0) {
+				checkCalls(ruleArray, start, end);
+				continue;
+			}
+			
+			for (int j = 0; j < ruleArray.length; j++) {
+				long sampleStart = System.nanoTime();
+				long sampleStartBytes = AnalyticsMetrics.getAllocatedBytes();
+				for (int i = start; i < end; i++)
+					ruleArray[j].check(i);
+				sampleNanos.addAndGet(j, System.nanoTime() - sampleStart);
+				sampleBytes.addAndGet(j, Math.max(0, AnalyticsMetrics.getAllocatedSince(sampleStartBytes)));
+			}
+		}
+		checkNanos.addAndGet(System.nanoTime() - startNanos);
+		long bytes = AnalyticsMetrics.getAllocatedSince(startBytes);
+		if (bytes < 0)
+			checkBytes.set(-1);
+		else if (checkBytes.get() >= 0)
+			checkBytes.addAndGet(bytes);
+		checkCalls.addAndGet(to - from);
+	}
+	
+	/*
+	 * Checks a range of calls against every rule in one pass
+	 * PARAMETER: Rule[] ruleArray - the rules to check
+	 * PARAMETER: int from - the index of the first call to check
+	 * PARAMETER: int to - the index after the last call to check
+	 * */
+	private static void checkCalls(Rule[] ruleArray, int from, int to) {
+		for (int i = from; i < to; i++) {
+			for (int j = 0; j < ruleArray.length; j++)
+				ruleArray[j].check(i);
+		}
+	}
+	
+	/*
+	 * Writes the results of every rule
+	 * PARAMETER: ExcelWriter writer - the writer to add the results to
+	 * */
+	public void write(ExcelWriter writer) {
+		for (int j = 0; j < rules.size(); j++)
+			rules.get(j).write(writer);
+	}
+	
+	/*
+	 * Adds the number each rule's results show for each companionship to a month of results to be kept
+	 * PARAMETER: ResultsStore.Month month - the month's results, the rules go in under their class names
+	 * */
+	public void addResults(ResultsStore.Month month) {
+		for (int j = 0; j < rules.size(); j++)
+			rules.get(j).addResults(month);
+	}
+	
+	/*This nested class checks one range of calls with its own copy of the rules*/
+	private class RangeTask extends RecursiveTask<Rule[]> {
+		private static final long serialVersionUID = 1L;
+		
+		private int from;
+		private int to;
+		private ProgressListener progress;
+		private AtomicLong checked;//the number of calls checked by all the tasks so far
+		
+		public RangeTask(int from, int to, ProgressListener progress, AtomicLong checked) {
+			this.from = from;
+			this.to = to;
+			this.progress = progress;
+			this.checked = checked;
+		}
+		
+		protected Rule[] compute() {
+			Rule[] copies = new Rule[rules.size()];
+			for (int j = 0; j < copies.length; j++)
+				copies[j] = rules.get(j).copy();
+			
+			//the range is checked a block at a time, so a cancel is noticed and progress is shown part way through
+			for (int start = from; start < to; start += RANGE_SIZE) {
+				if (progress != null && progress.isCancelled())
+					throw new CancellationException();
+				int end = Math.min(to, start + RANGE_SIZE);
+				check(copies, start, end);
+				if (progress != null)
+					progress.progress(checked.addAndGet(end - start));
+			}
+			return copies;
+		}
+	}
+}
@@ -0,0 +1,417 @@
+package rules;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Iterator;
+import java.util.Properties;
+
+import analytics.MissionOrganization;
+
+/*
+ * The times, limits and exemptions the rules check calls against. The defaults are the mission's rules,
+ * a rules file can change any of them without changing the code. The file is a properties file:
+ * 	night.start, night.end - calls starting before night.end or ending after night.start break the night rule (HH:mm)
+ * 	proselyting.start, proselyting.end - proselyting hours (HH:mm)
+ * 	planning.day - the day of weekly planning session (Sunday - Saturday)
+ * 	planning.transferDay - the day of planning session in the week before transfers
+ * 	planning.end - calls on planning day that end before this are part of planning session (HH:mm)
+ * 	investigator.maxDuration, missionary.maxDuration - the longest calls to investigators and missionaries can be (m:ss)
+ * 	limit.<type> - the monthly minutes a companionship type can use, types without one have no limit
+ * 	exempt - the companionship types no rule applies to, separated by commas
+ * 	proselyting.exempt - the companionship types that can call and be called in their own zone during proselyting hours
+ * 	outOfZone.detail - true = list every call outside of the zone under the zone and area counts (true or false),
+ * 		the calls are found again from the call list when the results are written, so it can't be used with the pipeline
+ * Everything is turned into whole minutes, seconds, day numbers and bit masks of type codes as it is read,
+ * so checking a call against the settings is only comparing ints.
+ * */
+
+public class RuleSettings {
+	
+	//the names of the days, indexed by Calendar day number - Calendar.SUNDAY
+	private static final String[] DAY_NAMES = {"sunday", "monday", "tuesday", "wednesday", "thursday", "friday", "saturday"};
+	
+	//the start of every key for a monthly minute limit
+	private static final String LIMIT = "limit.";
+	
+	//the keys a rules file can have, other than the limits
+	private static final String[] KEYS = {"night.start", "night.end", "proselyting.start", "proselyting.end", "planning.day",
+			"planning.transferDay", "planning.end", "investigator.maxDuration", "missionary.maxDuration", "exempt",
+			"proselyting.exempt", "outOfZone.detail"};
+	
+	//times of day, in minutes since midnight
+	private int nightStart = 22 * 60 + 30;//10:30pm
+	private int nightEnd = 6 * 60 + 30;//6:30am
+	private int proselytingStart = 10 * 60 + 30;//10:30am
+	private int proselytingEnd = 21 * 60;//9:00pm
+	private int planningEnd = 13 * 60 + 30;//1:30pm
+	
+	//days of the week, as Calendar constants
+	private int planningDay = Calendar.FRIDAY;
+	private int transferPlanningDay = Calendar.THURSDAY;
+	
+	//call lengths, in seconds
+	private int investigatorDuration = 300;
+	private int missionaryDuration = 530;
+	
+	//the monthly minute limit of each companionship type, indexed by type code, Long.MAX_VALUE = no limit
+	private long[] minuteLimits;
+	
+	//bit masks of companionship type codes (1 << type)
+	private int exemptTypes = 1 << MissionOrganization.SPECIAL;
+	private int proselytingExemptTypes = 1 << MissionOrganization.ZONE_LEADERS;
+	
+	//whether the out of zone rule keeps every call, not just the counts
+	private boolean outOfZoneDetail = false;
+	
+	private int checksum;
+	
+	/*
+	 * Creates the default settings
+	 * */
+	public RuleSettings() {
+		minuteLimits = new long[MissionOrganization.OTHER + 1];
+		Arrays.fill(minuteLimits, Long.MAX_VALUE);
+		minuteLimits[MissionOrganization.ELDERS] = 1200;
+		minuteLimits[MissionOrganization.SISTERS] = 1600;
+		minuteLimits[MissionOrganization.DISTRICT_LEADERS] = 1600;
+		minuteLimits[MissionOrganization.ZONE_LEADERS] = 2000;
+		checksum = computeChecksum();
+	}
+	
+	/*
+	 * Reads the settings out of a rules file, anything the file leaves out keeps its default
+	 * PARAMETER: String filePath - the location of the rules file
+	 * THROWS: IllegalArgumentException if the file has a key it doesn't know or a value it can't read
+	 * */
+	public RuleSettings(String filePath) throws IOException {
+		this();
+		
+		Properties properties = new Properties();
+		InputStream in = new FileInputStream(filePath);
+		try {
+			properties.load(in);
+		}
+		finally {
+			in.close();
+		}
+		
+		//check every key first, a typo would otherwise quietly leave the default in place
+		Iterator<String> keys = properties.stringPropertyNames().iterator();
+		while (keys.hasNext()) {
+			String key = keys.next();
+			if (!key.startsWith(LIMIT) && !Arrays.asList(KEYS).contains(key))
+				throw new IllegalArgumentException("Unknown setting in the rules file: " + key);
+		}
+		
+		nightStart = parseTime(properties, "night.start", nightStart);
+		nightEnd = parseTime(properties, "night.end", nightEnd);
+		proselytingStart = parseTime(properties, "proselyting.start", proselytingStart);
+		proselytingEnd = parseTime(properties, "proselyting.end", proselytingEnd);
+		planningEnd = parseTime(properties, "planning.end", planningEnd);
+		planningDay = parseDay(properties, "planning.day", planningDay);
+		transferPlanningDay = parseDay(properties, "planning.transferDay", transferPlanningDay);
+		investigatorDuration = parseDuration(properties, "investigator.maxDuration", investigatorDuration);
+		missionaryDuration = parseDuration(properties, "missionary.maxDuration", missionaryDuration);
+		exemptTypes = parseTypes(properties, "exempt", exemptTypes);
+		proselytingExemptTypes = parseTypes(properties, "proselyting.exempt", proselytingExemptTypes);
+		outOfZoneDetail = parseBoolean(properties, "outOfZone.detail", outOfZoneDetail);
+		
+		keys = properties.stringPropertyNames().iterator();
+		while (keys.hasNext()) {
+			String key = keys.next();
+			if (!key.startsWith(LIMIT))
+				continue;
+			int type = parseType(key.substring(LIMIT.length()), key);
+			String value = properties.getProperty(key).trim();
+			try {
+				minuteLimits[type] = value.length() == 0 ? Long.MAX_VALUE : Long.parseLong(value);
+			}
+			catch (NumberFormatException e) {
+				throw new IllegalArgumentException("The setting " + key + " must be a number of minutes: " + value);
+			}
+			if (minuteLimits[type] < 0)
+				throw new IllegalArgumentException("The setting " + key + " must be a number of minutes: " + value);
+		}
+		
+		checksum = computeChecksum();
+	}
+	
+	/*
+	 * Reads a time of day setting
+	 * PARAMETER: Properties properties - the settings
+	 * PARAMETER: String key - the name of the setting
+	 * PARAMETER: int value - the default, used if there's no setting
+	 * RETURN VALUE: int - the time in minutes since midnight
+	 * THROWS: IllegalArgumentException if the setting isn't in HH:mm format
+	 * */
+	private static int parseTime(Properties properties, String key, int value) {
+		String text = properties.getProperty(key);
+		if (text == null)
+			return value;
+		return parseTimeOfDay(text.trim(), key);
+	}
+	
+	/*
+	 * Reads a time of day
+	 * PARAMETER: String text - the time, in HH:mm format
+	 * PARAMETER: String key - the name of the setting or option the time is for, for the error message
+	 * RETURN VALUE: int - the time in minutes since midnight
+	 * THROWS: IllegalArgumentException if the text isn't in HH:mm format
+	 * */
+	public static int parseTimeOfDay(String text, String key) {
+		int[] parts = parsePair(text, key, "HH:mm");
+		if (parts[0] > 23 || parts[1] > 59)
+			throw new IllegalArgumentException("The setting " + key + " must be a time in HH:mm format: " + text);
+		return parts[0] * 60 + parts[1];
+	}
+	
+	/*
+	 * Reads a call length setting
+	 * PARAMETER: Properties properties - the settings
+	 * PARAMETER: String key - the name of the setting
+	 * PARAMETER: int value - the default, used if there's no setting
+	 * RETURN VALUE: int - the length in seconds
+	 * THROWS: IllegalArgumentException if the setting isn't in m:ss format
+	 * */
+	private static int parseDuration(Properties properties, String key, int value) {
+		String text = properties.getProperty(key);
+		if (text == null)
+			return value;
+		int[] parts = parsePair(text.trim(), key, "m:ss");
+		if (parts[1] > 59)
+			throw new IllegalArgumentException("The setting " + key + " must be a length in m:ss format: " + text);
+		return parts[0] * 60 + parts[1];
+	}
+	
+	/*
+	 * Reads two numbers separated by a colon
+	 * PARAMETER: String text - the text
+	 * PARAMETER: String key - the name of the setting, for the error message
+	 * PARAMETER: String format - the format the setting should be in, for the error message
+	 * RETURN VALUE: int[] - the number before the colon and then the number after it
+	 * THROWS: IllegalArgumentException if the text isn't two numbers separated by a colon
+	 * */
+	private static int[] parsePair(String text, String key, String format) {
+		int colon = text.indexOf(':');
+		try {
+			if (colon > 0 && text.length() - colon == 3) {
+				int first = Integer.parseInt(text.substring(0, colon));
+				int second = Integer.parseInt(text.substring(colon + 1));
+				if (first >= 0 && second >= 0)
+					return new int[] {first, second};
+			}
+		}
+		catch (NumberFormatException e) {
+			//fall through to the error below
+		}
+		throw new IllegalArgumentException("The setting " + key + " must be in " + format + " format: " + text);
+	}
+	
+	/*
+	 * Reads a day of the week setting
+	 * PARAMETER: Properties properties - the settings
+	 * PARAMETER: String key - the name of the setting
+	 * PARAMETER: int value - the default, used if there's no setting
+	 * RETURN VALUE: int - the day of the week, as a Calendar constant
+	 * THROWS: IllegalArgumentException if the setting isn't the name of a day
+	 * */
+	private static int parseDay(Properties properties, String key, int value) {
+		String text = properties.getProperty(key);
+		if (text == null)
+			return value;
+		return parseDayName(text.trim(), key);
+	}
+	
+	/*
+	 * Reads the name of a day of the week, in any case
+	 * PARAMETER: String text - the name of the day (Sunday - Saturday)
+	 * PARAMETER: String key - the name of the setting or option the day is for, for the error message
+	 * RETURN VALUE: int - the day of the week, as a Calendar constant
+	 * THROWS: IllegalArgumentException if the text isn't the name of a day
+	 * */
+	public static int parseDayName(String text, String key) {
+		int day = Arrays.asList(DAY_NAMES).indexOf(text.toLowerCase());
+		if (day < 0)
+			throw new IllegalArgumentException("The setting " + key + " must be the name of a day: " + text);
+		return day + Calendar.SUNDAY;
+	}
+	
+	/*
+	 * Reads a true or false setting
+	 * PARAMETER: Properties properties - the settings
+	 * PARAMETER: String key - the name of the setting
+	 * PARAMETER: boolean value - the default, used if there's no setting
+	 * RETURN VALUE: boolean - the setting
+	 * THROWS: IllegalArgumentException if the setting isn't true or false
+	 * */
+	private static boolean parseBoolean(Properties properties, String key, boolean value) {
+		String text = properties.getProperty(key);
+		if (text == null)
+			return value;
+		if (text.trim().equalsIgnoreCase("true"))
+			return true;
+		if (text.trim().equalsIgnoreCase("false"))
+			return false;
+		throw new IllegalArgumentException("The setting " + key + " must be true or false: " + text);
+	}
+	
+	/*
+	 * Reads a list of companionship types
+	 * PARAMETER: Properties properties - the settings
+	 * PARAMETER: String key - the name of the setting
+	 * PARAMETER: int value - the default, used if there's no setting
+	 * RETURN VALUE: int - a bit mask of the type codes, bit (1 << type) is set for each type in the list
+	 * THROWS: IllegalArgumentException if the list has something that isn't a companionship type
+	 * */
+	private static int parseTypes(Properties properties, String key, int value) {
+		String text = properties.getProperty(key);
+		if (text == null)
+			return value;
+		
+		int mask = 0;
+		String[] types = text.split(",");
+		for (int i = 0; i < types.length; i++) {
+			if (types[i].trim().length() > 0)
+				mask |= 1 << parseType(types[i].trim(), key);
+		}
+		return mask;
+	}
+	
+	/*
+	 * Reads a companionship type
+	 * PARAMETER: String type - the type, as written in the mission organization file
+	 * PARAMETER: String key - the name of the setting, for the error message
+	 * RETURN VALUE: int - the type code
+	 * THROWS: IllegalArgumentException if it isn't a companionship type
+	 * */
+	private static int parseType(String type, String key) {
+		int code = MissionOrganization.getTypeCode(type);
+		if (code == MissionOrganization.OTHER)
+			throw new IllegalArgumentException("The setting " + key + " has an unknown companionship type: " + type);
+		return code;
+	}
+	
+	/*
+	 * Works out the checksum of the settings, saved analysis is only reused if it was made with the same settings
+	 * RETURN VALUE: int - the checksum
+	 * */
+	private int computeChecksum() {
+		int[] values = {nightStart, nightEnd, proselytingStart, proselytingEnd, planningEnd, planningDay,
+				transferPlanningDay, investigatorDuration, missionaryDuration, exemptTypes, proselytingExemptTypes,
+				outOfZoneDetail ? 1 : 0};
+		return Arrays.hashCode(values) * 31 + Arrays.hashCode(minuteLimits);
+	}
+	
+	/*
+	 * Returns a checksum of all the settings, it changes if any of them change
+	 * */
+	public int getChecksum() {
+		return checksum;
+	}
+	
+	/*
+	 * Returns the end of the night, calls that start before it are night calls (minutes since midnight)
+	 * */
+	public int getNightEnd() {
+		return nightEnd;
+	}
+	
+	/*
+	 * Returns the start of the night, calls that end after it are night calls (minutes since midnight)
+	 * */
+	public int getNightStart() {
+		return nightStart;
+	}
+	
+	/*
+	 * Returns the start of proselyting hours (minutes since midnight)
+	 * */
+	public int getProselytingStart() {
+		return proselytingStart;
+	}
+	
+	/*
+	 * Returns the end of proselyting hours (minutes since midnight)
+	 * */
+	public int getProselytingEnd() {
+		return proselytingEnd;
+	}
+	
+	/*
+	 * Returns the day of weekly planning session, as a Calendar constant
+	 * */
+	public int getPlanningDay() {
+		return planningDay;
+	}
+	
+	/*
+	 * Returns the day of planning session in the week before transfers, as a Calendar constant
+	 * */
+	public int getTransferPlanningDay() {
+		return transferPlanningDay;
+	}
+	
+	/*
+	 * Returns the end of planning session (minutes since midnight)
+	 * */
+	public int getPlanningEnd() {
+		return planningEnd;
+	}
+	
+	/*
+	 * Returns the longest a call to an investigator can be (seconds)
+	 * */
+	public int getInvestigatorDuration() {
+		return investigatorDuration;
+	}
+	
+	/*
+	 * Returns the longest a call to another missionary can be (seconds)
+	 * */
+	public int getMissionaryDuration() {
+		return missionaryDuration;
+	}
+	
+	/*
+	 * Returns the monthly minute limit of a companionship type
+	 * PARAMETER: int type - the type code
+	 * RETURN VALUE: long - the most minutes the companionship can use, Long.MAX_VALUE if there's no limit
+	 * */
+	public long getMinuteLimit(int type) {
+		return minuteLimits[type];
+	}
+	
+	/*
+	 * Returns the companionship types no rule applies to, as a bit mask of type codes
+	 * */
+	public int getExemptTypes() {
+		return exemptTypes;
+	}
+	
+	/*
+	 * Returns the companionship types that can call in their own zone during proselyting hours, as a bit mask of type codes
+	 * */
+	public int getProselytingExemptTypes() {
+		return proselytingExemptTypes;
+	}
+	
+	/*
+	 * Returns whether the out of zone rule lists every call outside of the zone, not just how many there were
+	 * */
+	public boolean isOutOfZoneDetail() {
+		return outOfZoneDetail;
+	}
+	
+	/*
+	 * Formats a time of day for display, like 10:30pm
+	 * PARAMETER: int minutes - the time in minutes since midnight
+	 * RETURN VALUE: String - the formatted time
+	 * */
+	public static String formatTime(int minutes) {
+		int hour = minutes / 60 % 12;
+		return (hour == 0 ? 12 : hour) + ":" + String.format("%02d", minutes % 60) + (minutes < 12 * 60 ? "am" : "pm");
+	}
+}
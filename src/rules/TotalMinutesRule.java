@@ -0,0 +1,85 @@
+package rules;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import analytics.CallPartition;
+import analytics.MissionOrganization;
+import analytics.ViolationCounter;
+import excel.ExcelWriter;
+
+/*
+ * Checks for companionships that went over their monthly minute limits
+ * */
+
+public class TotalMinutesRule extends Rule {
+	
+	private static final String[] HEADER = {"Missionaries", "Minutes"};
+	
+	//the seconds used by each companionship, by area id
+	private ViolationCounter totalSeconds;
+	
+	//the minutes used by each companionship that went over its limit, by area id
+	private ViolationCounter violators;
+	
+	public TotalMinutesRule(MissionOrganization mission, CallPartition calls, RuleSettings settings) {
+		super(mission, calls, settings, "Going Over Monthly Minutes", HEADER);
+		totalSeconds = new ViolationCounter(mission.getAreaCount());
+		violators = new ViolationCounter(mission.getAreaCount());
+	}
+	
+	public void check(int call) {
+		totalSeconds.add(getCallerArea(call), calls.getDuration(call));
+	}
+	
+	public Rule copy() {
+		return new TotalMinutesRule(mission, calls, settings);
+	}
+	
+	public void merge(Rule other) {
+		totalSeconds.addAll(((TotalMinutesRule) other).totalSeconds);
+	}
+	
+	public void save(DataOutputStream out) throws IOException {
+		saveCounter(out, totalSeconds);
+	}
+	
+	public void load(DataInputStream in) throws IOException {
+		loadCounter(in, totalSeconds);
+	}
+	
+	public void finish() {
+		//the violators are worked out from scratch each time, from all the seconds so far
+		violators.clear();
+		
+		//loop through the totals, checking for ones that went over monthly limits
+		for (int area = 0; area < totalSeconds.size(); area++) {
+			long minutes = Math.round(totalSeconds.get(area) / 60.0);//convert to minutes
+			if (minutes == 0)
+				continue;
+			
+			if (wentOverLimit(area, minutes))
+				violators.add(area, minutes);
+		}
+	}
+	
+	/*
+	 * Checks whether a particular companionship is over their limit
+	 * PARAMETER: int area - the area id of the companionship to check
+	 * PARAMETER: long minutes - the amount that companionship called
+	 * RETURN VALUE: boolean - true = the companionship went over the limit, false = didn't
+	 * */
+	private boolean wentOverLimit(int area, long minutes) {
+		//each companionship type has its own limit in the rule settings
+		return minutes > settings.getMinuteLimit(mission.getAreaType(area));
+	}
+	
+	public ViolationCounter getResults() {
+		return violators;
+	}
+	
+	protected void writeViolations(ExcelWriter writer) {
+		writer.addMap(violators, mission);
+	}
+}